@@ -0,0 +1,210 @@
+/**
+Runs several TabuColorRandom simulations in lockstep, one per lane.
+The boards are stored lane-interleaved (structure-of-arrays), cell pos of lane l is at index pos*lanes+l,
+so one step of every lane touches the same region of memory.
+The game logic is the same as in Board, but the group search uses an explicit stack instead of recursion.
+*/
+import java.util.*;
+
+public class Batch
+{
+	//Number of boards simulated at once.
+	public static final int lanes = 8;
+
+	//Abbreviations.
+	private static final int ys = Board.height, xs = Board.width, colors = Board.colors, n = xs*ys;
+
+	//The boards of all lanes.
+	private final int[] cells = new int[n*lanes];
+
+	//The score, the number of moves, and the moves of the simulation in each lane.
+	public final int[] score = new int[lanes], len = new int[lanes];
+	public final int[][] line = new int[lanes][n/2];
+
+	//Whether the simulation in each lane cleared the board.
+	public final boolean[] clears = new boolean[lanes];
+
+	//The tabu color is avoided while more than this many blocks are left.
+	private int tabu_blocks = 48;
+
+	//Number of blocks left, tabu color, and whether the simulation is still running, for each lane.
+	private final int[] blocks = new int[lanes], tabu = new int[lanes];
+	private final boolean[] alive = new boolean[lanes];
+
+	//The column and row of each position.
+	private static final int[] col = new int[n], row = new int[n];
+	static
+	{
+		for(int pos = 0; pos<n; pos++){ col[pos] = pos/ys; row[pos] = pos%ys; }
+	}
+
+	//Group stamps of the latest search, a stack for the search, and the moves (position, area, stamp) found in the lane.
+	private final int[] seen = new int[n], stack = new int[n], mvs = new int[3*n], tabuMvs = new int[3*n];
+	private int stamp = 0;
+
+	//The columns of the group of each found move as a bitmask, and those of the latest searched group.
+	private final long[] cols = new long[n], tabuCols = new long[n];
+	private long mask;
+
+	//Number of groups of size 1 for each color.
+	private final int[] cnt = new int[colors+1];
+
+	//Number of blocks of each color, to pick the tabu color of a lane.
+	private final int[] colorcnt = new int[colors+1];
+
+	// Sets the number of blocks above which the tabu color is avoided.
+	public void setTabuBlocks(final int n)
+	{
+		tabu_blocks = n;
+	}
+
+	// Loads the given board into the given lane.
+	public void load(final int lane, final int[] board)
+	{
+		for(int pos = 0, i = lane; pos<n; pos++, i+=lanes) cells[i] = board[pos];
+	}
+
+	// Runs simulations in the lanes [0,cnt) until all have reached the end of the game.
+	// Returns the total number of inspected states (one per lane plus one per move), as MCTS.playout() accounts for them.
+	public int run(final int cnt, final Random rnd)
+	{
+		final int[] h = colorcnt;
+		for(int l = 0; l<cnt; l++)
+		{
+			//Pick the tabu color, ties are broken at random.
+			Arrays.fill(h,0);
+			for(int pos = 0, i = l; pos<n; pos++, i+=lanes) ++h[cells[i]];
+			int t = 1, eq = 1;
+			for(int c = 2; c<=colors; c++)
+				if(h[c]>h[t]){ t = c; eq = 1; }
+				else if(h[c]==h[t] && ++eq*rnd.nextDouble()<1) t = c;
+			tabu[l] = t;
+			blocks[l] = n-h[0];
+			score[l] = len[l] = 0;
+			clears[l] = false;
+			alive[l] = true;
+		}
+
+		int used = cnt;
+		for(int active = cnt; active>0; )
+			for(int l = 0; l<cnt; l++)
+				if(alive[l])
+				{
+					if(step(l,rnd)) ++used;
+					else{ alive[l] = false; --active; }
+				}
+		return used;
+	}
+
+	// Performs a random move in the given lane, or scores the board if no move exist.
+	// Returns whether a move was performed.
+	private boolean step(final int l, final Random rnd)
+	{
+		//We only use the simulation strategy if there's a significant number of blocks.
+		final int t = blocks[l]>tabu_blocks ? tabu[l] : 0;
+
+		if(stamp>Integer.MAX_VALUE-2*n){ Arrays.fill(seen,0); stamp = 0; } //The stamps are about to overflow.
+
+		//Number of found moves (times 3), and the score of the pruned groups.
+		int nxt = 0, tnxt = 0, rest = 0;
+		Arrays.fill(cnt,0);
+		final int first = ++stamp, end = end(l);
+		for(int pos = 0; pos<end; pos++)
+		{
+			final int color = cells[pos*lanes+l];
+			if(color==0 || seen[pos]>=first) continue;
+
+			final int g = ++stamp, area = fill(l,pos,color,g);
+			if(area==1){ ++cnt[color]; continue; }
+
+			final int y = row[pos];
+			if(y+area<ys && (y==0 || cells[(pos-1)*lanes+l]==0)) //VS-pruning, a vertical group on top of its column.
+			{
+				boolean prunable = true;
+				for(int i = pos+1; prunable && i<pos+area; i++) prunable &= seen[i]==g;
+				if(prunable){ rest += (area-2)*(area-2); continue; }
+			}
+
+			if(color==t){ tabuCols[tnxt/3] = mask; tabuMvs[tnxt++] = pos; tabuMvs[tnxt++] = area; tabuMvs[tnxt++] = g; }
+			else{ cols[nxt/3] = mask; mvs[nxt++] = pos; mvs[nxt++] = area; mvs[nxt++] = g; }
+		}
+
+		final int[] m = nxt>0 ? mvs : tabuMvs;
+		final long[] mc = nxt>0 ? cols : tabuCols;
+		if(nxt==0) nxt = tnxt;
+
+		if(nxt==0) //End of game.
+		{
+			if(end==0){ score[l] += 1000; clears[l] = true; }
+			else
+			{
+				score[l] += rest;
+				for(int c = 1; c<=colors; c++) score[l] -= (cnt[c]-2)*(cnt[c]-2);
+			}
+			return false;
+		}
+
+		//Choose random move, perform move, account for removed blocks.
+		final int mv = 3*rnd.nextInt(nxt/3), pos = m[mv], area = m[mv+1];
+		line[l][len[l]++] = pos;
+		score[l] += (area-2)*(area-2);
+		blocks[l] -= area;
+		kill(l,end,m[mv+2],mc[mv/3]);
+		return true;
+	}
+
+	// Marks the group of the given color containing pos in lane l with the stamp g, and returns its area.
+	private int fill(final int l, final int pos, final int color, final int g)
+	{
+		int top = 0, area = 0;
+		stack[top++] = pos; seen[pos] = g;
+		mask = 0;
+		while(top>0)
+		{
+			final int p = stack[--top], x = col[p], y = row[p];
+			++area; mask |= 1L<<x;
+			if(x>0 && seen[p-ys]!=g && cells[(p-ys)*lanes+l]==color){ seen[p-ys] = g; stack[top++] = p-ys; }
+			if(x<xs-1 && seen[p+ys]!=g && cells[(p+ys)*lanes+l]==color){ seen[p+ys] = g; stack[top++] = p+ys; }
+			if(y>0 && seen[p-1]!=g && cells[(p-1)*lanes+l]==color){ seen[p-1] = g; stack[top++] = p-1; }
+			if(y<ys-1 && seen[p+1]!=g && cells[(p+1)*lanes+l]==color){ seen[p+1] = g; stack[top++] = p+1; }
+		}
+		return area;
+	}
+
+	// Removes the group with stamp g, that lies in the columns of the given bitmask, from lane l,
+	// and applies the blocks-fall-columns-shift-left logic.
+	private void kill(final int l, final int end, final int g, long mask)
+	{
+		//Compact each column of the group downwards, skipping the removed blocks.
+		for(; mask!=0; mask &= mask-1)
+		{
+			final int off = Long.numberOfTrailingZeros(mask)*ys;
+			int w = ys-1;
+			for(int y = ys-1; y>=0; y--)
+				if(seen[off+y]!=g) cells[(off+w--)*lanes+l] = cells[(off+y)*lanes+l];
+			for(; w>=0; w--) cells[(off+w)*lanes+l] = 0;
+		}
+		shift(l,end);
+	}
+
+	// Makes the columns of lane l shift left.
+	private void shift(final int l, final int end)
+	{
+		for(int cnt = 0, off = 0; off<end; off+=ys)
+			if(cells[(off+ys-1)*lanes+l]==0) ++cnt;
+			else if(cnt>0)
+				for(int y = 0; y<ys; y++)
+				{
+					cells[(off-cnt*ys+y)*lanes+l] = cells[(off+y)*lanes+l];
+					cells[(off+y)*lanes+l] = 0;
+				}
+	}
+
+	// Returns the index just past the last non-empty column of lane l.
+	private int end(final int l)
+	{
+		int x = 0;
+		while(x<xs && cells[(x*ys+ys-1)*lanes+l]!=0) x++;
+		return x*ys;
+	}
+}
@@ -0,0 +1,164 @@
+/**
+A beam search, for when a solution is needed fast.
+Each layer keeps the width best states by their score plus the score of removing every current group (see Board.lowerscore()),
+states that can't beat the best finished solution even by Board.upperscore() are dropped, and so are duplicates (by zobrist hash).
+A layer is expanded in parallel on a fork-join pool, every task keeps only its width best children, and the children of
+two tasks are merged into their width best, so a layer never holds more than width states.
+*/
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import static java.util.Arrays.*;
+
+public class Beam
+{
+	//Abbreviations.
+	private static final int ys = Board.height, xs = Board.width;
+
+	//The pool expanding the layers, and the least number of states expanded by a task.
+	private static final ForkJoinPool pool = ForkJoinPool.commonPool();
+	private static final int grain = 16;
+
+	//Move generation scratch of each thread.
+	private static final ThreadLocal<Board.Moves> scratch = ThreadLocal.withInitial(Board.Moves::new);
+
+	//A state of the beam: the board, the score so far, the move leading here and the state it was made in, and its evaluation.
+	private static class State
+	{
+		final int[] board; final int score, move, depth, eval; final State prv; final long hash;
+		State(final int[] board, final int score, final int move, final State prv, final int eval)
+		{
+			this.board = board; this.score = score; this.move = move; this.prv = prv; this.eval = eval;
+			depth = prv==null ? 0 : prv.depth+1;
+			hash = Board.hash(board);
+		}
+	}
+
+	// Returns a solution for the given board found by a beam of the given width
+	// (solution format as MCTS.solve(): index 0 is the score, followed by the moves).
+	public static int[] solve(final int[] board, final int width)
+	{
+		return solve(board, width, new AtomicLong());
+	}
+
+	// As solve() above, and counts the inspected states in used.
+	static int[] solve(final int[] board, final int width, final AtomicLong used)
+	{
+		final int[] start = copyOf(board, xs*ys);
+		final AtomicReference<State> best = new AtomicReference<State>();
+		final AtomicInteger bar = new AtomicInteger(Integer.MIN_VALUE); //The score of the best finished state.
+
+		State[] layer = { new State(start, 0, -1, null, 0) };
+		while(layer.length>0)
+			layer = pool.invoke(new Expand(layer, 0, layer.length, width, best, bar, used)).toArray();
+
+		//Follow the moves back to the start.
+		final State end = best.get();
+		final int[] sol = new int[end.depth+1];
+		sol[0] = end.score;
+		for(State s = end; s.prv!=null; s = s.prv) sol[s.depth] = s.move;
+		return sol;
+	}
+
+	//Expands the states [from,to) of a layer, and returns the width best children.
+	private static class Expand extends RecursiveTask<Top>
+	{
+		private static final long serialVersionUID = 1L;
+
+		final State[] layer; final int from, to, width;
+		final AtomicReference<State> best; final AtomicInteger bar; final AtomicLong used;
+
+		Expand(final State[] layer, final int from, final int to, final int width, final AtomicReference<State> best, final AtomicInteger bar, final AtomicLong used)
+		{
+			this.layer = layer; this.from = from; this.to = to; this.width = width;
+			this.best = best; this.bar = bar; this.used = used;
+		}
+
+		protected Top compute()
+		{
+			if(to-from>grain)
+			{
+				final int mid = (from+to)>>>1;
+				final Expand left = new Expand(layer, from, mid, width, best, bar, used);
+				left.fork();
+				final Top top = new Expand(layer, mid, to, width, best, bar, used).compute();
+				top.addAll(left.join());
+				return top;
+			}
+
+			final Board.Moves m = scratch.get();
+			final Top top = new Top(width);
+			for(int k = from; k<to; k++)
+			{
+				final State s = layer[k];
+				used.incrementAndGet();
+				final int len = m.moves(s.board);
+				if(len==0) //End of game.
+				{
+					finish(new State(s.board, s.score+Board.endscore(s.board), s.move, s.prv, 0));
+					continue;
+				}
+
+				final int[] mvs = copyOf(m.mvs, len);
+				for(int i = 0; i<len; i+=2)
+				{
+					final int[] board = copyOf(s.board, xs*ys);
+					final int score = Board.doMove(board, mvs[i], mvs[i+1], s.score);
+					if(score+Board.upperscore(board)<=bar.get()) continue; //Can't beat the best solution.
+					used.incrementAndGet();
+					top.add(new State(board, score, mvs[i], s, score+m.lowerscore(board)));
+				}
+			}
+			return top;
+		}
+
+		// Records the given finished state if it is the best so far.
+		private void finish(final State s)
+		{
+			for(State b = best.get(); b==null || s.score>b.score; b = best.get())
+				if(best.compareAndSet(b, s)){ bar.accumulateAndGet(s.score, Math::max); return; }
+		}
+	}
+
+	//The (at most) width best states offered, without duplicates.
+	private static class Top
+	{
+		final int width;
+		final PriorityQueue<State> heap = new PriorityQueue<State>((a,b) -> Integer.compare(a.eval, b.eval)); //Worst first.
+		final HashMap<Long,State> map = new HashMap<Long,State>();
+
+		Top(final int width){ this.width = width; }
+
+		// Offers the given state.
+		void add(final State s)
+		{
+			final State dup = map.get(s.hash);
+			if(dup!=null)
+			{
+				if(dup.score>=s.score) return;
+				heap.remove(dup); //The same board, reached with a higher score.
+			}
+			else if(heap.size()>=width)
+			{
+				if(heap.peek().eval>=s.eval) return;
+				map.remove(heap.poll().hash);
+			}
+			heap.add(s);
+			map.put(s.hash, s);
+		}
+
+		// Offers the states of other.
+		void addAll(final Top other)
+		{
+			for(final State s : other.heap) add(s);
+		}
+
+		// Returns the states, best first.
+		State[] toArray()
+		{
+			final State[] a = heap.toArray(new State[0]);
+			sort(a, (x,y) -> Integer.compare(y.eval, x.eval));
+			return a;
+		}
+	}
+}
\ No newline at end of file
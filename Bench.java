@@ -0,0 +1,309 @@
+/**
+Macro benchmark: solves a seeded corpus of random boards at several budgets and deadlines, and tells whether the search
+got better or worse per CPU-second compared to a stored baseline.
+
+Boards of any geometry up to Board.width x Board.height and any number of colors up to Board.colors are generated;
+a smaller board is placed in the bottom left corner of the board, which is a valid position of the game.
+Each combination of board, budget, deadline and number of laps is a task. The tasks run in parallel in worker processes
+(MCTS is static, so a process solves one board at a time), through MCTS.solve(), or MCTS.metaSolve() if laps>1,
+each with a seed derived from the corpus seed, and the playout policy of the given name (see MCTS.policy()).
+Every task gives a CSV row: the board, the settings (policy included), the score, the time, the iterations per second and the peak heap.
+If a baseline CSV is given, the rows are compared with its rows of the same settings, and a row is flagged
+if its score dropped by more than tolerance (relative), or if it took more than slack (relative) longer without scoring higher.
+
+Usage: java Bench key=value...
+	seed=1 boards=20 size=15x15 colors=5 budgets=100000,1000000 deadlines=0 laps=1 policy=tabu procs=2
+	out=bench.csv baseline=(none) tolerance=0.02 slack=0.25 playouts=0
+(budgets in resources, deadlines in ms where 0 is none, lists are comma separated.)
+The exit status is 1 if a regression was flagged.
+
+With playouts=n (n>0) nothing is solved: n TabuColorRandom playouts are run from each board of the corpus, one at a time
+as MCTS.playout() runs them and Batch.lanes at a time by Batch, and the playouts per second of both kernels are printed.
+*/
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class Bench
+{
+	//Abbreviations.
+	private static final int ys = Board.height, xs = Board.width;
+
+	//The header of the CSV files.
+	private static final String header = "board,seed,width,height,colors,budget,deadline,laps,policy,score,ms,iter_per_s,peak_heap_mb";
+
+	// Returns a random board of the given geometry and number of colors, the same for the same seed.
+	// (The blocks fill the bottom left width x height corner, the rest is empty.)
+	public static int[] board(final long seed, final int width, final int height, final int colors)
+	{
+		if(width>xs || height>ys || colors>Board.colors) throw new IllegalArgumentException("At most "+xs+"x"+ys+" with "+Board.colors+" colors.");
+		final Random rnd = new Random(seed);
+		final int[] board = new int[xs*ys];
+		for(int x = 0; x<width; x++)
+			for(int y = ys-height; y<ys; y++)
+				board[x*ys+y] = 1+rnd.nextInt(colors);
+		return board;
+	}
+
+	/*** <Runner> ***/
+	//A board solved with certain settings, and the result.
+	private static class Task
+	{
+		final int board, width, height, colors, budget, deadline, laps; final long seed; final String policy;
+		String row; //The CSV row, once done.
+		Task(final int board, final long seed, final int width, final int height, final int colors, final int budget, final int deadline, final int laps,
+			final String policy)
+		{
+			this.board = board; this.seed = seed; this.width = width; this.height = height; this.colors = colors;
+			this.budget = budget; this.deadline = deadline; this.laps = laps; this.policy = policy;
+		}
+
+		// Returns the settings part of the CSV row, the key for comparisons.
+		String key(){ return board+","+seed+","+width+","+height+","+colors+","+budget+","+deadline+","+laps+","+policy; }
+	}
+
+	// Runs the given tasks on procs worker processes using the given policy, and returns them with their rows filled in (in the given order).
+	private static List<Task> run(final List<Task> tasks, final String policy, final int procs) throws Exception
+	{
+		final ConcurrentLinkedQueue<Task> todo = new ConcurrentLinkedQueue<Task>(tasks);
+		final ExecutorService pool = Executors.newFixedThreadPool(procs);
+		final List<Future<Void>> done = new ArrayList<Future<Void>>();
+		for(int i = 0; i<procs; i++) done.add(pool.submit(() -> { drive(todo, policy); return null; }));
+		pool.shutdown();
+		for(final Future<Void> f : done) f.get();
+		return tasks;
+	}
+
+	// Starts a worker process using the given policy and hands it tasks until there are none left.
+	private static void drive(final Queue<Task> todo, final String policy) throws IOException, InterruptedException
+	{
+		final String java = System.getProperty("java.home")+File.separator+"bin"+File.separator+"java";
+		final Process p = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Bench", "worker", policy)
+			.redirectError(ProcessBuilder.Redirect.DISCARD).start();
+		try(PrintWriter out = new PrintWriter(new OutputStreamWriter(p.getOutputStream()));
+			BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream())))
+		{
+			for(Task t = todo.poll(); t!=null; t = todo.poll())
+			{
+				final StringBuilder sb = new StringBuilder();
+				sb.append(t.budget).append(' ').append(t.deadline).append(' ').append(t.laps).append(' ').append(t.seed);
+				for(final int c : board(t.seed, t.width, t.height, t.colors)) sb.append(' ').append(c);
+				out.println(sb);
+				out.flush();
+
+				final String res = in.readLine();
+				if(res==null) throw new IOException("A worker died on board "+t.board+".");
+				t.row = t.key()+","+res;
+				System.err.println(t.row);
+			}
+		}
+		p.waitFor();
+	}
+
+	// The worker process: reads tasks (budget deadline laps seed board) from stdin, one per line,
+	// and answers each with "score,ms,iter_per_s,peak_heap_mb". The playouts use the policy of the given name.
+	private static void worker(final String policy) throws IOException
+	{
+		MCTS.setPolicy(MCTS.policy(policy));
+		final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		for(String line = in.readLine(); line!=null; line = in.readLine())
+		{
+			final StringTokenizer st = new StringTokenizer(line);
+			final int budget = Integer.parseInt(st.nextToken()), deadline = Integer.parseInt(st.nextToken()), laps = Integer.parseInt(st.nextToken());
+			final long seed = Long.parseLong(st.nextToken());
+			final int[] board = new int[xs*ys];
+			for(int i = 0; i<xs*ys; i++) board[i] = Integer.parseInt(st.nextToken());
+
+			System.gc();
+			for(final MemoryPoolMXBean m : ManagementFactory.getMemoryPoolMXBeans()) m.resetPeakUsage();
+			MCTS.setSeed(seed);
+			final long it = MCTS.getIterations(), t = System.currentTimeMillis();
+			MCTS.setDeadline(deadline>0 ? t+deadline : 0);
+			final int[] sol = laps>1 ? MCTS.metaSolve(board, budget, laps) : MCTS.solve(board, budget);
+			final long ms = Math.max(1, System.currentTimeMillis()-t);
+
+			long peak = 0;
+			for(final MemoryPoolMXBean m : ManagementFactory.getMemoryPoolMXBeans())
+				if(m.getType()==MemoryType.HEAP) peak += m.getPeakUsage().getUsed();
+
+			System.out.println(sol[0]+","+ms+","+(1000*(MCTS.getIterations()-it)/ms)+","+(peak>>20));
+			System.out.flush();
+		}
+	}
+	/*** </Runner> ***/
+
+	/*** <Playouts: The scalar playout kernel against the batched one> ***/
+	// Runs cnt playouts from each of the given boards with each kernel, a few rounds so that the first ones warm up the JIT,
+	// and prints the playouts per second of both in every round.
+	private static void playouts(final List<int[]> boards, final int cnt)
+	{
+		final MCTS.Policy policy = new MCTS.TabuPolicy();
+		final MCTS.Features f = new MCTS.Features();
+		final Board.Moves m = new Board.Moves();
+		final Batch batch = new Batch();
+		final Random rnd = new Random(1);
+		long sum = 0; //The scores of all playouts, so that none is optimized away.
+		for(int round = 1; round<=3; round++)
+		{
+			long scalar = 0, batched = 0;
+			for(final int[] board : boards)
+			{
+				long t = System.nanoTime();
+				for(int k = 0; k<cnt; k++) //As MCTS.playout().
+				{
+					final int[] b = board.clone();
+					f.count(b);
+					policy.start(f, rnd);
+					int score = 0;
+					for(int len = policy.moves(b, m, f); len>0; len = policy.moves(b, m, f))
+					{
+						f.sizes(m, len);
+						final int mv = policy.pick(b, m, len, f, rnd), i = m.mvs[mv], area = m.mvs[mv+1];
+						f.cnt[b[i]] -= area; f.blocks -= area;
+						score = Board.doMove(b, i, area, score);
+					}
+					sum += score+Board.endscore(b);
+				}
+				scalar += System.nanoTime()-t;
+
+				t = System.nanoTime();
+				for(int k = 0; k<cnt; k+=Batch.lanes)
+				{
+					final int lanes = Math.min(Batch.lanes, cnt-k);
+					for(int l = 0; l<lanes; l++) batch.load(l, board);
+					batch.run(lanes, rnd);
+					for(int l = 0; l<lanes; l++) sum += batch.score[l];
+				}
+				batched += System.nanoTime()-t;
+			}
+
+			final double n = 1e9*cnt*boards.size();
+			System.out.printf("Round %d: scalar %.0f playouts/s, batched %.0f playouts/s (%.2fx)%n", round, n/scalar, n/batched, (double)scalar/batched);
+		}
+		System.err.println("Checksum "+sum);
+	}
+	/*** </Playouts> ***/
+
+	/*** <Comparison> ***/
+	// Reads the rows of a CSV file written by Bench, keyed by their settings.
+	// A file with other columns (written by another version of Bench) gives no rows.
+	private static Map<String,String[]> read(final String file) throws IOException
+	{
+		final Map<String,String[]> rows = new LinkedHashMap<String,String[]>();
+		try(BufferedReader in = new BufferedReader(new FileReader(file)))
+		{
+			if(!header.equals(in.readLine()))
+			{
+				System.err.println("The baseline "+file+" doesn't have the columns "+header+".");
+				return rows;
+			}
+			for(String line = in.readLine(); line!=null; line = in.readLine())
+			{
+				final String[] f = line.split(",");
+				if(f.length<13) continue;
+				rows.put(String.join(",", Arrays.copyOf(f, 9)), f);
+			}
+		}
+		return rows;
+	}
+
+	// Compares the rows of the run with those of the baseline, prints the flagged rows and the mean score of each setting,
+	// and returns the number of flagged rows.
+	private static int compare(final List<Task> tasks, final Map<String,String[]> base, final double tolerance, final double slack)
+	{
+		int flagged = 0, matched = 0;
+		final Map<String,double[]> means = new TreeMap<String,double[]>(); //Settings -> sum of score now, sum of score before, count.
+		for(final Task t : tasks)
+		{
+			final String[] b = base.get(t.key());
+			if(b==null) continue;
+			++matched;
+			final String[] f = t.row.split(",");
+			final int score = Integer.parseInt(f[9]), old = Integer.parseInt(b[9]);
+			final long ms = Long.parseLong(f[10]), oldms = Long.parseLong(b[10]);
+
+			if(score<old-tolerance*Math.max(Math.abs(old), 1))
+			{
+				++flagged;
+				System.out.println("REGRESSION score "+t.key()+": "+old+" -> "+score);
+			}
+			else if(score<=old && ms>oldms*(1+slack))
+			{
+				++flagged;
+				System.out.println("REGRESSION time "+t.key()+": "+oldms+" ms -> "+ms+" ms");
+			}
+
+			final double[] m = means.computeIfAbsent("budget="+t.budget+" deadline="+t.deadline+" laps="+t.laps+" policy="+t.policy, k -> new double[3]);
+			m[0] += score; m[1] += old; ++m[2];
+		}
+
+		for(final Map.Entry<String,double[]> e : means.entrySet())
+		{
+			final double[] m = e.getValue();
+			System.out.printf("%s: mean score %.1f (baseline %.1f) over %d boards%n", e.getKey(), m[0]/m[2], m[1]/m[2], (int)m[2]);
+		}
+		System.out.println(matched+" rows compared, "+flagged+" flagged.");
+		return flagged;
+	}
+	/*** </Comparison> ***/
+
+	// Parses a comma separated list of numbers.
+	private static int[] list(final String s)
+	{
+		return Arrays.stream(s.split(",")).mapToInt(Integer::parseInt).toArray();
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length>0 && args[0].equals("worker")){ worker(args.length>1 ? args[1] : "tabu"); return; }
+
+		final Map<String,String> opt = new HashMap<String,String>();
+		opt.put("seed", "1"); opt.put("boards", "20"); opt.put("size", "15x15"); opt.put("colors", "5");
+		opt.put("budgets", "100000,1000000"); opt.put("deadlines", "0"); opt.put("laps", "1"); opt.put("policy", "tabu"); opt.put("procs", "2");
+		opt.put("out", "bench.csv"); opt.put("tolerance", "0.02"); opt.put("slack", "0.25"); opt.put("playouts", "0");
+		for(final String a : args)
+		{
+			final String[] kv = a.split("=", 2);
+			if(kv.length<2 || !opt.containsKey(kv[0]) && !kv[0].equals("baseline")) throw new IllegalArgumentException("Unknown option "+a+".");
+			opt.put(kv[0], kv[1]);
+		}
+
+		//The corpus, every board with every setting.
+		final Random rnd = new Random(Long.parseLong(opt.get("seed")));
+		final String[] size = opt.get("size").split("x");
+		final int width = Integer.parseInt(size[0]), height = Integer.parseInt(size[1]), colors = Integer.parseInt(opt.get("colors"));
+		if(Integer.parseInt(opt.get("playouts"))>0)
+		{
+			final List<int[]> boards = new ArrayList<int[]>();
+			for(int b = 0, n = Integer.parseInt(opt.get("boards")); b<n; b++) boards.add(board(rnd.nextLong(), width, height, colors));
+			playouts(boards, Integer.parseInt(opt.get("playouts")));
+			return;
+		}
+
+		final List<Task> tasks = new ArrayList<Task>();
+		for(int b = 0, n = Integer.parseInt(opt.get("boards")); b<n; b++)
+		{
+			final long seed = rnd.nextLong();
+			for(final int budget : list(opt.get("budgets")))
+				for(final int deadline : list(opt.get("deadlines")))
+					for(final int laps : list(opt.get("laps")))
+						tasks.add(new Task(b, seed, width, height, colors, budget, deadline, laps, opt.get("policy")));
+		}
+
+		MCTS.policy(opt.get("policy")); //Fail here on an unknown name, not in the workers.
+		run(tasks, opt.get("policy"), Integer.parseInt(opt.get("procs")));
+
+		try(PrintWriter out = new PrintWriter(new FileWriter(opt.get("out"))))
+		{
+			out.println(header);
+			for(final Task t : tasks) out.println(t.row);
+		}
+
+		if(opt.containsKey("baseline"))
+		{
+			final int flagged = compare(tasks, read(opt.get("baseline")), Double.parseDouble(opt.get("tolerance")), Double.parseDouble(opt.get("slack")));
+			if(flagged>0) System.exit(1);
+		}
+	}
+}
\ No newline at end of file
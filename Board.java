@@ -25,7 +25,14 @@ public class Board
 	public static void redBoard(final int[] board)
 	{
 		for(int i = 0; i<xs*ys; i+=ys) redCol(board,i);
-		redRow(board);
+		redRow(board,0);
+	}
+	// Same as redBoard(), but blocks were only removed in the columns of the given bitmask (bit x is column x).
+	public static void redBoard(final int[] board, long cols)
+	{
+		final int first = Long.numberOfTrailingZeros(cols);
+		for(; cols!=0; cols &= cols-1) redCol(board,Long.numberOfTrailingZeros(cols)*ys);
+		redRow(board,first);
 	}
 	// Makes the blocks in the column with its top-square at index off fall.
 	private static void redCol(final int[] board, final int off)
@@ -34,10 +41,10 @@ public class Board
 			if(board[i]==0) ++cnt;
 			else if(cnt>0){ board[i+cnt] = board[i]; board[i] = 0; }
 	}
-	// Makes the columns of the board shift left.
-	private static void redRow(final int[] board)
+	// Makes the columns of the board shift left, columns left of column 'first' are known to be non-empty.
+	private static void redRow(final int[] board, final int first)
 	{
-		for(int i = 0, cnt = 0; i<xs; i++)
+		for(int i = first, cnt = 0; i<xs; i++)
 			if(board[i*ys+ys-1]==0) ++cnt;
 			else if(cnt>0){ System.arraycopy(board,i*ys,board,ys*(i-cnt),ys); System.arraycopy(zero,0,board,i*ys,ys); }
 	}
@@ -49,21 +56,23 @@ public class Board
 	// If input score=0 then the score of the move is returned.
 	public static int doMove(final int[] board, final int i, final int area, int score)
 	{
-		dfsKill(board,i/ys,i%ys,board[i]);
+		final long cols = dfsKill(board,i/ys,i%ys,board[i]);
 		score += (area-2)*(area-2);
-		redBoard(board);
+		redBoard(board,cols); //Only the columns of the group need to be reduced.
 		return score;
 	}
 	// Eliminates the group of color prv conatining the grid position (x,y).
 	// (No other game logic is applied, i.e. no blocks or columns will move.)
-	private static void dfsKill(final int[] board, final int x, final int y, final int prv)
+	// Returns a bitmask of the columns in which blocks were eliminated.
+	private static long dfsKill(final int[] board, final int x, final int y, final int prv)
 	{
-		if(x<0 || x>=xs || y<0 || y>=ys || prv!=board[x*ys+y]) return;
+		if(x<0 || x>=xs || y<0 || y>=ys || prv!=board[x*ys+y]) return 0;
 		board[x*ys+y] = 0;
-		dfsKill(board,x-1,y,prv);
-		dfsKill(board,x+1,y,prv);
-		dfsKill(board,x,y-1,prv);
-		dfsKill(board,x,y+1,prv);
+		return 1L<<x
+			| dfsKill(board,x-1,y,prv)
+			| dfsKill(board,x+1,y,prv)
+			| dfsKill(board,x,y-1,prv)
+			| dfsKill(board,x,y+1,prv);
 	}
 	// Same as dfsKill(), but returns the number of blocks eliminated.
 	private static int dfsKill2(final int[] board, final int x, final int y, final int prv)
@@ -93,58 +102,49 @@ public class Board
 		return copyOf(mvs, rawMoves(board));
 	}
 
-	//An array where moves generated by moves() are temporarily stored.
-	public static final int[] mvs = new int[xs*ys];
+	//Scratch space for move generation.
+	//Threads generating moves concurrently need one each, the static methods below share one.
+	public static class Moves
+	{
+		//An array where moves generated by moves() are temporarily stored.
+		public final int[] mvs = new int[xs*ys];
 
-	//The number of groups of size 1, as of the latest call to moves().
-	public static int onecnt;
+		//The number of groups of size 1, as of the latest call to moves().
+		public int onecnt;
 
-	// A method for generating moves on the format described by getMoves().
-	// The moves are stored in the publicly available mvs-arrays.
-	// The method returns the number of available moves times 2, i.e. the valid part of the mvs-array.
-	public static int moves(final int[] board)
-	{
-		int nxt = onecnt = 0;
-		for(int x = 0, pos = 0; x<xs; x++)
-			for(int y = 0; y<ys; y++, pos++)
-				if(board[pos]>0)
-				{
-					mvs[nxt++] = pos;
-					if((mvs[nxt++] = area(board,x,y,board[pos]))==1){ nxt -= 2; ++onecnt; }
-					else if(y+mvs[nxt-1]<ys)
-					{
-						final int area = mvs[nxt-1], color = board[pos];
-						boolean prunable = (y==0 || board[pos-1]==0) && color==board[pos+area-1];
-						for(int i = pos+1; prunable && i<pos+area-1; i++) prunable &= color==board[i];
-						if(prunable) nxt -= 2; //Only if alternatives exists.
-					}
-				}
-		for(int i = 0; i<xs*ys; i++) board[i] = -board[i];
-		return nxt;
-	}
-	// Like moves() but omits moves which removes groups of color tabu,
-	// unless no other moves exist, then this method is equivalent to moves().
-	public static int tabuMoves(final int[] board, final int tabu)
-	{
-		int nxt = onecnt = 0;
-		for(int x = 0, pos = 0; x<xs; x++)
-			for(int y = 0; y<ys; y++, pos++)
-				if(board[pos]>0 && board[pos]!=tabu)
-				{
-					mvs[nxt++] = pos;
-					if((mvs[nxt++] = area(board,x,y,board[pos]))==1){ nxt -= 2; ++onecnt; }
-					else if(y+mvs[nxt-1]<ys)
+		// A method for generating moves on the format described by getMoves().
+		// The moves are stored in the publicly available mvs-array.
+		// The method returns the number of available moves times 2, i.e. the valid part of the mvs-array.
+		public int moves(final int[] board)
+		{
+			int nxt = onecnt = 0;
+			final int end = end(board), cols = end/ys;
+			for(int x = 0, pos = 0; x<cols; x++)
+				for(int y = 0; y<ys; y++, pos++)
+					if(board[pos]>0)
 					{
-						final int area = mvs[nxt-1], color = board[pos];
-						boolean prunable = (y==0 || board[pos-1]==0) && color==board[pos+area-1];
-						for(int i = pos+1; prunable && i<pos+area-1; i++) prunable &= color==board[i];
-						if(prunable) nxt -= 2; //Only if alternatives exists.
+						mvs[nxt++] = pos;
+						if((mvs[nxt++] = area(board,x,y,board[pos]))==1){ nxt -= 2; ++onecnt; }
+						else if(y+mvs[nxt-1]<ys)
+						{
+							final int area = mvs[nxt-1], color = board[pos];
+							boolean prunable = (y==0 || board[pos-1]==0) && color==board[pos+area-1];
+							for(int i = pos+1; prunable && i<pos+area-1; i++) prunable &= color==board[i];
+							if(prunable) nxt -= 2; //Only if alternatives exists.
+						}
 					}
-				}
-		if(nxt==0)
-			for(int x = 0, pos = 0; x<xs; x++)
+			for(int i = 0; i<end; i++) board[i] = -board[i];
+			return nxt;
+		}
+		// Like moves() but omits moves which removes groups of color tabu,
+		// unless no other moves exist, then this method is equivalent to moves().
+		public int tabuMoves(final int[] board, final int tabu)
+		{
+			int nxt = onecnt = 0;
+			final int end = end(board), cols = end/ys;
+			for(int x = 0, pos = 0; x<cols; x++)
 				for(int y = 0; y<ys; y++, pos++)
-					if(board[pos]>0)
+					if(board[pos]>0 && board[pos]!=tabu)
 					{
 						mvs[nxt++] = pos;
 						if((mvs[nxt++] = area(board,x,y,board[pos]))==1){ nxt -= 2; ++onecnt; }
@@ -156,21 +156,77 @@ public class Board
 							if(prunable) nxt -= 2; //Only if alternatives exists.
 						}
 					}
-		for(int i = 0; i<xs*ys; i++) board[i] = -board[i];
+			if(nxt==0)
+				for(int x = 0, pos = 0; x<cols; x++)
+					for(int y = 0; y<ys; y++, pos++)
+						if(board[pos]>0)
+						{
+							mvs[nxt++] = pos;
+							if((mvs[nxt++] = area(board,x,y,board[pos]))==1){ nxt -= 2; ++onecnt; }
+							else if(y+mvs[nxt-1]<ys)
+							{
+								final int area = mvs[nxt-1], color = board[pos];
+								boolean prunable = (y==0 || board[pos-1]==0) && color==board[pos+area-1];
+								for(int i = pos+1; prunable && i<pos+area-1; i++) prunable &= color==board[i];
+								if(prunable) nxt -= 2; //Only if alternatives exists.
+							}
+						}
+			for(int i = 0; i<end; i++) board[i] = -board[i];
+			return nxt;
+		}
+		// Like moves() but does not use VS-pruning.
+		public int rawMoves(final int[] board)
+		{
+			int nxt = onecnt = 0;
+			final int end = end(board), cols = end/ys;
+			for(int x = 0, pos = 0; x<cols; x++)
+				for(int y = 0; y<ys; y++, pos++)
+					if(board[pos]>0)
+					{
+						mvs[nxt++] = pos;
+						if((mvs[nxt++] = area(board,x,y,board[pos]))==1){ nxt -= 2; ++onecnt; }
+					}
+			for(int i = 0; i<end; i++) board[i] = -board[i];
+			return nxt;
+		}
+		// Returns an lower bound on the score achievable for this board.
+		public int lowerscore(final int[] board)
+		{
+			final int len = rawMoves(board);
+			int bound = onecnt==0 ? 1000 : 0;
+			for(int i = 1; i<len; i+=2) bound += (mvs[i]-2)*(mvs[i]-2);
+			return bound;
+		}
+	}
+
+	//The scratch space of the static methods.
+	private static final Moves shared = new Moves();
+
+	//An array where moves generated by moves() are temporarily stored.
+	public static final int[] mvs = shared.mvs;
+
+	//The number of groups of size 1, as of the latest call to moves().
+	public static int onecnt;
+
+	// A method for generating moves on the format described by getMoves(), see Moves.moves().
+	public static int moves(final int[] board)
+	{
+		final int nxt = shared.moves(board);
+		onecnt = shared.onecnt;
 		return nxt;
 	}
-	// Like moves() but does not use VS-pruning.
+	// See Moves.tabuMoves().
+	public static int tabuMoves(final int[] board, final int tabu)
+	{
+		final int nxt = shared.tabuMoves(board,tabu);
+		onecnt = shared.onecnt;
+		return nxt;
+	}
+	// See Moves.rawMoves().
 	public static int rawMoves(final int[] board)
 	{
-		int nxt = onecnt = 0;
-		for(int x = 0, pos = 0; x<xs; x++)
-			for(int y = 0; y<ys; y++, pos++)
-				if(board[pos]>0)
-				{
-					mvs[nxt++] = pos;
-					if((mvs[nxt++] = area(board,x,y,board[pos]))==1){ nxt -= 2; ++onecnt; }
-				}
-		for(int i = 0; i<xs*ys; i++) board[i] = -board[i];
+		final int nxt = shared.rawMoves(board);
+		onecnt = shared.onecnt;
 		return nxt;
 	}
 	// Calculates the area of the group containing position (x,y) with color prv.
@@ -186,6 +242,13 @@ public class Board
 		sum += area(board,x,y+1,prv);
 		return sum;
 	}
+	// Returns the index just past the last non-empty column, the remainder of a (valid) board is all zeros.
+	public static int end(final int[] board)
+	{
+		int x = 0;
+		while(x<xs && board[x*ys+ys-1]!=0) x++;
+		return x*ys;
+	}
 	/*** </Move finding> ***/
 
 	/*** <End of Game> ***/
@@ -196,7 +259,8 @@ public class Board
 		if(board[ys-1]==0) return 1000;
 		final int[] cnt = new int[colors];
 		int score = 0;
-		for(int x = 0, pos = 0; x<xs; x++)
+		final int end = end(board), cols = end/ys;
+		for(int x = 0, pos = 0; x<cols; x++)
 			for(int y = 0; y<ys; y++, pos++)
 				if(board[pos]>0)
 				{
@@ -204,7 +268,7 @@ public class Board
 					if(s==1) ++cnt[~board[pos]]; //++cnt[-board[pos] - 1];
 					else score += (s-2)*(s-2);
 				}
-		for(int i = 0; i<xs*ys; i++) board[i] = -board[i];
+		for(int i = 0; i<end; i++) board[i] = -board[i];
 		for(int i = 0; i<colors; i++) score -= (cnt[i]-2)*(cnt[i]-2);
 		return score;
 	}
@@ -218,7 +282,7 @@ public class Board
 	public static int upperscore(final int[] board)
 	{
 		final int[] cnt = new int[colors+1];
-		for(int i = 0; i<xs*ys; i++) ++cnt[board[i]];
+		for(int i = 0, end = end(board); i<end; i++) ++cnt[board[i]];
 		int bound = 0; boolean bonus = true;
 		for(int i = 1; i<=colors; bonus &= cnt[i++]!=1)
 			if(cnt[i]>=2)
@@ -228,9 +292,8 @@ public class Board
 	// Returns an lower bound on the score achievable for this board.
 	public static int lowerscore(final int[] board)
 	{
-		final int len = rawMoves(board);
-		int bound = onecnt==0 ? 1000 : 0;
-		for(int i = 1; i<len; i+=2) bound += (mvs[i]-2)*(mvs[i]-2);
+		final int bound = shared.lowerscore(board);
+		onecnt = shared.onecnt;
 		return bound;
 	}
 	/*** </End of Game> ***/
@@ -0,0 +1,227 @@
+/**
+Distributes MCTS searches over worker processes (see Worker) on the local machine.
+A job is a board together with a random seed. Workers stream every improving solution back as soon as it is found,
+so the best solution of a board survives the death of the worker that found it, and the job of a dead worker is
+handed to another worker. The best score of a board is sent to the workers searching it, to be used as their baseline.
+
+The protocol uses DataStreams over a local socket.
+Coordinator to worker: JOB id seed simlim baseline deadline board[0..xs*ys), BEST id score, STOP.
+(The deadline is given in ms from when the job is received, 0 for none.)
+Worker to coordinator: SOL id length solution[0..length), DONE id.
+*/
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+public class Coordinator
+{
+	//Message tags.
+	static final int JOB = 1, BEST = 2, STOP = 3, SOL = 4, DONE = 5;
+
+	//Abbreviations.
+	private static final int ys = Board.height, xs = Board.width;
+
+	//A board to search with a certain seed.
+	private static class Job
+	{
+		final int id; final long seed;
+		Job(final int id, final long seed){ this.id = id; this.seed = seed; }
+	}
+
+	//A connected worker, and the board it is currently searching (-1 if none).
+	private static class Link
+	{
+		final DataOutputStream out; int id = -1;
+		Link(final DataOutputStream out){ this.out = out; }
+	}
+
+	//The boards, the best solution found for each board, and the resources of a job.
+	private final int[][] boards, best;
+	private final int simlim;
+
+	//Jobs not yet handed out, number of jobs not yet done, the connected workers.
+	private final ArrayDeque<Job> queue = new ArrayDeque<Job>();
+	private int pending;
+	private final ArrayList<Link> links = new ArrayList<Link>();
+
+	//Number of worker processes alive, how many more may be started to replace dead ones, and the port they connect to.
+	private int alive, spare, port;
+
+	private Coordinator(final int[][] boards, final int simlim, final int runs, final long seed)
+	{
+		this.boards = boards;
+		this.simlim = simlim;
+		best = new int[boards.length][];
+		final Random rnd = new Random(seed);
+		for(int r = 0; r<runs; r++)
+			for(int id = 0; id<boards.length; id++)
+				queue.add(new Job(id, rnd.nextLong()));
+		pending = queue.size();
+	}
+
+	// Solves every board runs times, each with a new seed and simlim resources, using the given number of worker processes.
+	// Returns the best solution of each board (null if no solution was ever found).
+	public static int[][] solve(final int[][] boards, final int simlim, final int runs, final int workers) throws IOException, InterruptedException
+	{
+		final Coordinator co = new Coordinator(boards, simlim, runs, System.currentTimeMillis());
+		try(ServerSocket server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress()))
+		{
+			final Thread acceptor = new Thread(() -> co.accept(server));
+			acceptor.setDaemon(true);
+			acceptor.start();
+
+			synchronized(co)
+			{
+				co.spare = 2*workers;
+				co.port = server.getLocalPort();
+				for(int i = 0; i<workers; i++) co.spawn();
+				while(co.pending>0 && co.alive>0) co.wait();
+				if(co.pending>0) System.err.println("All workers died, "+co.pending+" jobs were not done.");
+			}
+		}
+		return co.best;
+	}
+
+	// Starts a new worker process, if there are spare ones left. (Called with the lock held.)
+	private void spawn()
+	{
+		if(spare==0) return;
+		--spare;
+		final String java = System.getProperty("java.home")+File.separator+"bin"+File.separator+"java";
+		try
+		{
+			final Process p = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Worker", ""+port).inheritIO().start();
+			++alive;
+			p.onExit().thenRun(this::exited);
+		}
+		catch(IOException e){ System.err.println("Could not start a worker: "+e); }
+	}
+
+	// Called when a worker process has exited, a replacement is started if there are jobs left.
+	private synchronized void exited()
+	{
+		--alive;
+		if(pending>0) spawn();
+		notifyAll();
+	}
+
+	// Accepts workers until the server is closed.
+	private void accept(final ServerSocket server)
+	{
+		try
+		{
+			while(true)
+			{
+				final Socket sock = server.accept();
+				final Thread t = new Thread(() -> serve(sock));
+				t.setDaemon(true);
+				t.start();
+			}
+		}
+		catch(IOException e){} //The server was closed.
+	}
+
+	// Hands out jobs to the worker on the other end of sock, and collects its solutions.
+	private void serve(final Socket sock)
+	{
+		Job job = null;
+		Link link = null;
+		try(Socket s = sock)
+		{
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+			link = new Link(new DataOutputStream(new BufferedOutputStream(s.getOutputStream())));
+			synchronized(this){ links.add(link); }
+
+			while((job = take())!=null)
+			{
+				synchronized(link.out)
+				{
+					int bar = Integer.MIN_VALUE;
+					synchronized(this){ link.id = job.id; if(best[job.id]!=null) bar = best[job.id][0]; }
+					link.out.writeInt(JOB); link.out.writeInt(job.id); link.out.writeLong(job.seed);
+					link.out.writeInt(simlim); link.out.writeInt(bar); link.out.writeInt(0);
+					for(int i = 0; i<xs*ys; i++) link.out.writeInt(boards[job.id][i]);
+					link.out.flush();
+				}
+
+				//Collect solutions until the job is done.
+				for(int tag = in.readInt(); tag!=DONE; tag = in.readInt())
+				{
+					final int id = in.readInt(), len = in.readInt();
+					final int[] sol = new int[len];
+					for(int i = 0; i<len; i++) sol[i] = in.readInt();
+					offer(id, sol);
+				}
+				in.readInt(); //The id of the done job.
+
+				synchronized(this){ job = null; link.id = -1; if(--pending==0) notifyAll(); }
+			}
+
+			synchronized(link.out){ link.out.writeInt(STOP); link.out.flush(); }
+			synchronized(this){ links.remove(link); }
+		}
+		catch(IOException e) //The worker died, let somebody else do its job.
+		{
+			synchronized(this)
+			{
+				links.remove(link);
+				if(job!=null){ queue.addFirst(job); System.err.println("Worker died, board "+job.id+" is requeued."); }
+				notifyAll();
+			}
+		}
+	}
+
+	// Returns the next job, or null if all jobs are done. Waits while jobs might still be requeued.
+	private synchronized Job take()
+	{
+		while(queue.isEmpty() && pending>0)
+			try{ wait(); } catch(InterruptedException e){ return null; }
+		return queue.poll();
+	}
+
+	// Records the given solution of board id if it is valid and better than the best one,
+	// and tells the workers searching the board about the new score.
+	private void offer(final int id, final int[] sol)
+	{
+		if(!Board.verify(Arrays.copyOf(boards[id], xs*ys), sol))
+		{
+			System.err.println("Discarded invalid solution for board "+id+".");
+			return;
+		}
+
+		final ArrayList<Link> tell = new ArrayList<Link>();
+		synchronized(this)
+		{
+			if(best[id]!=null && best[id][0]>=sol[0]) return;
+			best[id] = sol;
+			for(final Link l : links) if(l.id==id) tell.add(l);
+		}
+
+		for(final Link l : tell)
+			synchronized(l.out)
+			{
+				try{ l.out.writeInt(BEST); l.out.writeInt(id); l.out.writeInt(sol[0]); l.out.flush(); }
+				catch(IOException e){} //Its own handler will notice.
+			}
+	}
+
+	// Reads boards (in the format of Game) from the given file, and prints the best solution found for each.
+	// Usage: java Coordinator file simlim runs workers
+	public static void main(String[] args) throws Exception
+	{
+		final ArrayList<int[]> list = new ArrayList<int[]>();
+		try(Scanner in = new Scanner(new File(args[0])))
+		{
+			while(in.hasNextInt())
+			{
+				final int[] b = new int[xs*ys];
+				for(int i = 0; i<xs*ys; i++) b[i] = in.nextInt();
+				list.add(b);
+			}
+		}
+
+		final int[][] best = solve(list.toArray(new int[0][]), Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+		for(int i = 0; i<best.length; i++)
+			System.out.println(best[i]==null ? "-" : Arrays.toString(best[i]));
+	}
+}
@@ -1,130 +1,143 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 import javax.swing.*;
 import java.util.*;
 import java.io.*;
 
 public class Game extends JPanel implements MouseListener, MouseMotionListener
 {
-	//Double buffering.
-	private Image dbi;
-	private Graphics dbg;
-
 	//Size of the graphical area.
 	private final int width = 800, height = 600, w = width, h = height;
 
 	//Bakground color.
-	private final Color bg;
+	private final Color bg = Color.black;
 
 	//Size of a block (a block is a square), size of the board in number of blocks, and the number of colors.
 	private static final int tile = 32, ys = Board.height, xs = Board.width, colors = Board.colors;
 
+	//Where the board is drawn, and where the solver progress is drawn (right of the board).
+	private final int top = height-ys*tile, left = xs*tile;
+
 	//Colors are logically presented as integers [1..colors]. Assigns the logical color i to graphical color fix[i-1].
 	private static final Color[] fix = {Color.red, Color.blue, Color.green, Color.yellow, Color.cyan};
 
-	//A column-sized array with the background color.
-	private static final Color[] zero = new Color[ys];
-
-	//The graphical board.
-	private final Color[][] board = new Color[xs][ys];
+	//The back buffer, it always holds the current picture, only what changes is redrawn.
+	private final BufferedImage dbi = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+	private final Graphics dbg = dbi.getGraphics();
 
-	//The logical board.
+	//The board, as used by Board. (The game logic is all in Board.)
 	final int[] b = new int[xs*ys];
 
-	//Keeps track of highlighting of groups.
-	private final boolean[][] mark = new boolean[xs][ys];
+	//The group label of each position and the size of each group, recomputed after every move.
+	private final int[] group = new int[xs*ys], size = new int[xs*ys+1];
+
+	//The label of the highlighted group (0 if none).
+	private int mark = 0;
 
 	//Our current score.
 	private int score = 0;
 
-	// Creates the board, both the logical and graphical.
+	//Whether the solver owns the board (it's searching or replaying), clicks are ignored meanwhile.
+	private boolean busy = false;
+
+	//Progress of the solver: the best solution so far, and the number of iterations per second.
+	private int[] best = null;
+	private int rate = 0;
+
+	// Creates the board, and draws it.
 	public Game() throws Exception
 	{
-		bg = Color.black;
-		for(int i = 0; i<ys; i++) zero[i] = bg;
-
 		// Load the board here, keep the format in mind.
 		Scanner in = new Scanner(new File("test.smg"));
-		for(int i = 0; i<xs; i++)
-			for(int j = 0; j<ys; j++)
-				board[i][j] = fix[(b[i*ys+j] = in.nextInt())-1];
+		for(int i = 0; i<xs*ys; i++) b[i] = in.nextInt();
 		in.close();
 
+		label();
+		dbg.setColor(bg);
+		dbg.fillRect(0,0,width,height);
+		for(int pos = 0; pos<xs*ys; pos++) drawTile(pos);
+		drawScore();
+
 		setPreferredSize(new Dimension(width,height));
 
 		addMouseListener(this);
 		addMouseMotionListener(this);
 	}
 
-	// Draws the state of the graphical board, executed by calling repaint().
+	/*** <Drawing> ***/
+	// Shows the back buffer, the clip of g limits the copying to what was asked to be repainted.
 	public void paint(Graphics g)
 	{
-        if(dbi==null)
-        {
-            dbi = createImage(width, height);
-            dbg = dbi.getGraphics();
-        }
-
-		dbg.setColor(bg);
-		dbg.fillRect(0,0,width,height);
-
-		for(int i = 0; i<xs; i++)
-			for(int j = 0; j<ys; j++)
-			{
-				if(mark[i][j]) dbg.setColor(Color.white);
-				else dbg.setColor(board[i][j]);
-				dbg.fillRect(i*tile,h-ys*tile+j*tile,tile,tile);
-			}
+		g.drawImage(dbi,0,0,null);
+	}
 
-		dbg.setColor(Color.white);
-		dbg.drawString("Score: " + score, 8, 16);
+	// Redraws the tile at the given position into the back buffer, and asks for it to be repainted.
+	private void drawTile(final int pos)
+	{
+		final int x = pos/ys*tile, y = top+pos%ys*tile;
+		if(mark!=0 && group[pos]==mark) dbg.setColor(Color.white);
+		else dbg.setColor(b[pos]==0 ? bg : fix[b[pos]-1]);
+		dbg.fillRect(x,y,tile,tile);
+		repaint(x,y,tile,tile);
+	}
 
-		g.drawImage(dbi,0,0,width,height,null);
+	// Redraws every tile of the group with the given label.
+	private void drawGroup(final int label)
+	{
+		for(int pos = 0; pos<xs*ys; pos++) if(group[pos]==label) drawTile(pos);
 	}
 
-	/*** <Graphical board logic> ***/
-	// Calculates the size of the group containing the block at (x,y) of color prv,
-	// and mark all blocks/positions of the group.
-	private int dfsMark(final int x, final int y, final Color prv)
+	// Redraws the score.
+	private void drawScore()
 	{
-		if(x<0 || x>=xs || y<0 || y>=ys || prv!=board[x][y] || mark[x][y]) return 0;
-		mark[x][y] = true;
-		int sum = 1;
-		sum += dfsMark(x-1,y,prv);
-		sum += dfsMark(x+1,y,prv);
-		sum += dfsMark(x,y-1,prv);
-		sum += dfsMark(x,y+1,prv);
-		return sum;
+		dbg.setColor(bg);
+		dbg.fillRect(0,0,left,top);
+		dbg.setColor(Color.white);
+		dbg.drawString("Score: " + score, 8, 16);
+		repaint(0,0,left,top);
 	}
 
-	// Eliminates the group containing the block at (x,y) of color prv.
-	// The size of the eliminated group is returned.
-	private int dfsKill(final int x, final int y, final Color prv)
+	// Redraws the progress of the solver, the best line is given as x,y per move.
+	private void drawStatus()
 	{
-		if(x<0 || x>=xs || y<0 || y>=ys || prv!=board[x][y]) return 0;
-		board[x][y] = bg;
-		int sum = 1;
-		sum += dfsKill(x-1,y,prv);
-		sum += dfsKill(x+1,y,prv);
-		sum += dfsKill(x,y-1,prv);
-		sum += dfsKill(x,y+1,prv);
-		return sum;
+		dbg.setColor(bg);
+		dbg.fillRect(left,0,width-left,height);
+		if(best!=null)
+		{
+			dbg.setColor(Color.white);
+			dbg.drawString("Best: " + best[0], left+16, 16);
+			dbg.drawString("Iterations/s: " + rate, left+16, 32);
+			dbg.drawString("Line:", left+16, 56);
+			for(int i = 1; i<best.length; i++)
+				dbg.drawString(best[i]/ys + "," + best[i]%ys, left+16+((i-1)%6)*48, 72+((i-1)/6)*16);
+		}
+		repaint(left,0,width-left,height);
 	}
+	/*** </Drawing> ***/
 
-	// Applies game physics to the given graphical column.
-	private void redCol(final Color[] col)
+	/*** <Board logic> ***/
+	// Labels the groups of the board, and counts their sizes.
+	private void label()
 	{
-		for(int i = ys-1, cnt = 0; i>=0; i--)
-			if(col[i]==bg) ++cnt;
-			else if(cnt>0){ col[i+cnt] = col[i]; col[i] = bg; }
+		Arrays.fill(group,0);
+		Arrays.fill(size,0);
+		for(int pos = 0, n = 0; pos<xs*ys; pos++)
+			if(b[pos]!=0 && group[pos]==0)
+				size[++n] = fill(pos/ys,pos%ys,b[pos],n);
 	}
 
-	// Applies the column-shift-left logic to the graphical board.
-	private void redRow()
+	// Gives the group of color prv containing (x,y) the given label, and returns its size.
+	private int fill(final int x, final int y, final int prv, final int label)
 	{
-		for(int i = 0, cnt = 0; i<xs; i++)
-			if(board[i][ys-1]==bg) ++cnt;
-			else if(cnt>0){ board[i-cnt] = board[i]; board[i] = zero; }
+		if(x<0 || x>=xs || y<0 || y>=ys || prv!=b[x*ys+y] || group[x*ys+y]!=0) return 0;
+		group[x*ys+y] = label;
+		int sum = 1;
+		sum += fill(x-1,y,prv,label);
+		sum += fill(x+1,y,prv,label);
+		sum += fill(x,y-1,prv,label);
+		sum += fill(x,y+1,prv,label);
+		return sum;
 	}
 
 	// Attempts to perform the move of removing the group of the block at (x,y).
@@ -132,19 +145,20 @@ public class Game extends JPanel implements MouseListener, MouseMotionListener
 	// otherwise true is returned.
 	private boolean makeMove(final int x, final int y)
 	{
-		if(board[x][y]==bg){ System.err.println("ERROR "+x+"-"+y); return false; }
-
-		final Color tmp = board[x][y];
-		final int sum = dfsKill(x,y,board[x][y]);
+		final int pos = x*ys+y;
+		if(b[pos]==0 || size[group[pos]]<2){ System.err.println("ERROR "+x+"-"+y); return false; }
 
-		if(sum<2){ System.err.println("ERROR "+x+"-"+y); board[x][y] = tmp; return false; }
+		final int[] old = Arrays.copyOf(b, xs*ys);
+		score = Board.doMove(b, pos, size[group[pos]], score);
+		mark = 0;
+		label();
 
-		score += (sum - 2)*(sum - 2);
-		for(int i = 0; i<xs; i++) redCol(board[i]);
-		redRow();
+		//Only the tiles that changed are redrawn.
+		for(int i = 0; i<xs*ys; i++) if(b[i]!=old[i]) drawTile(i);
 
 		System.err.println("Made move: " + x + " " + y);
-		if(gameOver()){ score += endScore(); System.err.println("GameOver!"); }
+		if(gameOver()){ score += Board.endscore(b); System.err.println("GameOver!"); }
+		drawScore();
 
 		return true;
 	}
@@ -152,74 +166,41 @@ public class Game extends JPanel implements MouseListener, MouseMotionListener
 	// Returns true if the game is over, i.e. there exists no more move.
 	private boolean gameOver()
 	{
-		for(int i = 0; i<xs; i++)
-			for(int j = 0; j<ys; j++)
-				if(board[i][j]!=bg && dfsMark(i,j,board[i][j])>1)
-				{
-					for(i = 0; i<xs; i++) Arrays.fill(mark[i],false);
-					return false;
-				}
+		for(int i = 1; i<=xs*ys; i++) if(size[i]>1) return false;
 		return true;
 	}
-
-	// Calculates the end game score of the board.
-	private int endScore()
-	{
-		if(board[0][ys-1]==bg) return 1000;
-		int ans = 0;
-		final int[] cnt = new int[colors];
-		for(int i = 0; i<xs; i++) Arrays.fill(mark[i],false);
-		for(int i = 0; i<xs; i++)
-			for(int j = 0; j<ys; j++)
-				if(board[i][j]!=bg)
-				{
-					final int area = dfsMark(i,j,board[i][j]);
-					if(area>1) ans += (area-2)*(area-2);
-					else
-						for(int k = 0; k<colors; k++)
-							if(board[i][j]==fix[k])
-								cnt[k]++;
-				}
-		for(int i = 0; i<colors; i++) ans -= (cnt[i]-2)*(cnt[i]-2);
-		for(int i = 0; i<xs; i++) Arrays.fill(mark[i],false);
-		return ans;
-	}
-	/*** </Graphical board logic> ***/
+	/*** </Board logic> ***/
 
 	/*** <Mouse click> ***/
 	// Logic for detecting if a group was clicked on.
 	public void mouseClicked(MouseEvent me)
 	{
-		final int x = me.getX()/tile, y = (me.getY() - h+ys*tile)/tile;
-		if(x<xs && y<ys && y>=0 && board[x][y]!=bg)
+		if(busy) return;
+		final int x = me.getX()/tile, y = (me.getY() - top)/tile;
+		if(x<xs && y<ys && y>=0 && b[x*ys+y]!=0)
 		{
 			makeMove(x,y); //Attempt to make the specified move.
 		}
-		for(int i = 0; i<xs; i++) Arrays.fill(mark[i],false);
-		repaint();
-		marked = false;
+		highlight(0);
 	}
 
-	//Keep tracks whether a group is currently being highlighted or not.
-	private boolean marked = false;
-
 	// Logic for highlighting of groups when hovered by the mouse.
 	public void mouseMoved(MouseEvent me)
 	{
-		final int x = me.getX()/tile, y = (me.getY() - h+ys*tile)/tile;
-		if(x<xs && y<ys && y>=0 && board[x][y]!=bg)
-		{
-			for(int i = 0; i<xs; i++) Arrays.fill(mark[i],false);
-			if(dfsMark(x,y,board[x][y])<2) mark[x][y] = marked = false;
-			else marked = true;
-			repaint();
-		}
-		else if(marked)
-		{
-			for(int i = 0; i<xs; i++) Arrays.fill(mark[i],false);
-			repaint();
-			marked = false;
-		}
+		if(busy) return;
+		final int x = me.getX()/tile, y = (me.getY() - top)/tile;
+		final int g = x<xs && y<ys && y>=0 ? group[x*ys+y] : 0;
+		highlight(size[g]>1 ? g : 0);
+	}
+
+	// Highlights the group with the given label instead of the current one (0 for none), redrawing only their tiles.
+	private void highlight(final int label)
+	{
+		if(label==mark) return;
+		final int prv = mark;
+		mark = label;
+		if(prv!=0) drawGroup(prv);
+		if(label!=0) drawGroup(label);
 	}
 
 	public void mouseEntered(MouseEvent me){}
@@ -230,33 +211,89 @@ public class Game extends JPanel implements MouseListener, MouseMotionListener
 	/*** </Mouse click> ***/
 
 	/*** <Algorithm interaction> ***/
-	// Solves the board using an algorithm.
-	// The time and score of the algorithm is presented, followed by a visualization of the solution.
+	// Solves the board using an algorithm on a background thread, and returns at once.
+	// The progress is shown while it runs, then the time and score are presented, followed by a visualization of the solution.
+	// (Must be called on the event dispatch thread.)
 	public void runSolver()
 	{
-		long tid = System.currentTimeMillis();
-		final int[] h = MCTS.solve(b,10*64*10000); //Call your algorithm here.
-		tid = System.currentTimeMillis() - tid;
+		busy = true;
+		final long start = System.currentTimeMillis();
+
+		final SwingWorker<int[],int[]> worker = new SwingWorker<int[],int[]>()
+		{
+			protected int[] doInBackground()
+			{
+				MCTS.setListener(this::publish);
+				try{ return MCTS.solve(Arrays.copyOf(b, xs*ys),10*64*10000); } //Call your algorithm here.
+				finally{ MCTS.setListener(null); }
+			}
+
+			protected void process(final java.util.List<int[]> sols)
+			{
+				best = sols.get(sols.size()-1);
+				drawStatus();
+			}
 
-		System.err.println("Found solution in " + tid + " ms!");
-		System.err.println("Score: " + h[0]);
+			protected void done()
+			{
+				progress.stop();
+				final int[] h;
+				try{ h = get(); }
+				catch(Exception e){ System.err.println("The solver failed: " + e); busy = false; return; }
 
-		simulate(h);
+				System.err.println("Found solution in " + (System.currentTimeMillis()-start) + " ms!");
+				System.err.println("Score: " + h[0]);
+
+				best = h;
+				drawStatus();
+				simulate(h);
+			}
+		};
+
+		//Samples the iteration count of the solver, twice a second.
+		progress = new javax.swing.Timer(500, new ActionListener()
+		{
+			private long last = MCTS.getIterations();
+			public void actionPerformed(ActionEvent e)
+			{
+				final long it = MCTS.getIterations();
+				rate = (int)Math.max(0, 2*(it-last));
+				last = it;
+				drawStatus();
+			}
+		});
+		progress.start();
+		worker.execute();
 	}
 
-	// Visualizes the given solution h to SameGame by a simulation of it.
+	//Timer sampling the progress of the solver.
+	private javax.swing.Timer progress;
+
+	// Visualizes the given solution h to SameGame by a simulation of it, a move is made every 512 ms on the event dispatch thread.
 	private void simulate(final int[] h)
 	{
 		System.err.println("Number of moves: " + (h.length-1));
 
-		for(int i = 1; i<h.length; i++)
+		final javax.swing.Timer replay = new javax.swing.Timer(512, null);
+		replay.addActionListener(new ActionListener()
 		{
-			try{ Thread.sleep(512); } catch(Exception e){}
-			makeMove(h[i]/ys,h[i]%ys);
-			repaint();
-		}
-
-		System.err.println("Simulation done");
+			private int i = 1;
+			public void actionPerformed(ActionEvent e)
+			{
+				if(i<h.length)
+				{
+					makeMove(h[i]/ys,h[i]%ys);
+					++i;
+				}
+				if(i>=h.length)
+				{
+					replay.stop();
+					busy = false;
+					System.err.println("Simulation done");
+				}
+			}
+		});
+		replay.start();
 	}
 	/*** </Algorithm interaction> ***/
 }
\ No newline at end of file
@@ -19,11 +19,16 @@ public class GameFrame extends JFrame
 		setVisible(true);
 		game.requestFocus();
 
-		game.runSolver(); //Remove this line for human play.
+		game.runSolver(); //Remove this line for human play. (Returns at once, the solver runs in the background.)
 	}
 
 	public static void main(String[] BwaKell) throws Exception
 	{
-		new GameFrame("SameGame");
+		//Swing must only be touched on the event dispatch thread.
+		SwingUtilities.invokeLater(() ->
+		{
+			try{ new GameFrame("SameGame"); }
+			catch(Exception e){ System.err.println("Could not start: " + e); System.exit(1); }
+		});
 	}
 }
\ No newline at end of file
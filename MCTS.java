@@ -1,4 +1,8 @@
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.function.Consumer;
 import static java.util.Arrays.*;
 
 public class MCTS
@@ -15,21 +19,63 @@ public class MCTS
 	//The best solution found so far.
 	private static int[] best = {-225*225-1};
 
-	//Our default explorative factor.
-	private static double defaultC = 0.021 * 5000;
-
-	//The limit for resources left when we should start to decrease explorative factors.
-	private static final double urgency_limit = 0.30;
+	//The tunable constants of the search, see Params.
+	private static Params params = new Params();
 
 	//Our current resources, the total resources (those we started with), and up to which depth moves should be "finalized".
 	private static int inspect_lim = 0, start_lim = 0, break_depth = 0;
 
+	//The root of the current search, it's re-rooted whenever a move is finalized.
+	private static Node search_root;
+
 	//Hash table for duplication detection.
 	private static final HashMap<Long,Node> map = new HashMap<Long,Node>();
 
+	//The maximum number of nodes in the tree, and the maximum fraction of the heap that may be in use,
+	// before subtrees are evicted (Integer.MAX_VALUE and 1.0 means no limit).
+	private static int node_limit = Integer.MAX_VALUE;
+	private static double heap_limit = 1.0;
+
+	//Whether new leaves are simulated several at a time (see batchPlayout()), the kernel running them,
+	// the children simulated in the latest batch, and which of them yielded the best simulation.
+	private static boolean batch = false;
+	private static final Batch batcher = new Batch();
+	private static final int[] batch_idx = new int[Batch.lanes];
+	private static int batch_bi;
+
+	//A score to beat that was found elsewhere, e.g. by another process, and who to tell about new best solutions beating it.
+	private static volatile int baseline = Integer.MIN_VALUE;
+	private static Consumer<int[]> listener = null;
+
+	//The time (in ms) at which a search must stop, 0 if there's no deadline.
+	private static volatile long deadline = 0;
+
+	//Number of iterations run by all searches so far, and its copy for other threads following the progress.
+	//The copy is only published every 256 iterations and when a search ends, to keep the volatile write out of the loop.
+	private static long iter = 0;
+	private static volatile long iterations = 0;
+
+	//Picks the moves of the playouts, the features of the board of the current playout, and its move generation scratch.
+	private static Policy policy = new TabuPolicy();
+	private static final Features features = new Features();
+	private static final Board.Moves scratch = new Board.Moves();
+
+	//Decides how many resources each level gets before its move is finalized.
+	private static Schedule schedule = new StaticSchedule();
+
+	//The share of the resources spent on finding a first solution with WarmStart before the tree search, 0 skips it (see setWarmStart()).
+	private static double warm_share = 0;
+
+	//The most solved nodes, and the most priors, metaSolve() carries from one lap to the next (0 for none), see carryOver().
+	private static int carry_limit = 0;
+
+	//Where snapshots of the search are written (null for nowhere), how often (in ms), and when the next one is due.
+	private static String checkpoint = null;
+	private static long checkpoint_every = 0, checkpoint_next = 0;
+
 	//Flags for: If the last simulation cleared the board,
 	// if the last solution yielded is comes from traversing down a perfectly solved path,
-	// and if any terminal node was encountered before urgency_limit.
+	// and if any terminal node was encountered before the urgency limit.
 	private static boolean bonus, solved, early_terminal;
 
 	public static int[] metaSolve(final int[] board, final int tot, final int laps)
@@ -37,17 +83,120 @@ public class MCTS
 		final int simlim = tot/laps; //Approximate number of resources per run.
 
 		int[] ans = null;
+		carried = 0;
 		for(int i = 0; i<laps; i++)
 		{
+			carrying = carry_limit>0 && i<laps-1;
 			solve(board,simlim);
 			if(ans==null || best[0]>ans[0]) ans = copyOf(best, best.length);
+			if(carrying) carryOver();
 
 			rnd.setSeed(System.currentTimeMillis() * 1000000007L); //Let's use a new random seed.
 		}
 
+		carrying = false; carry.clear(); priors.clear(); //Nothing is carried into later searches.
 		return ans;
 	}
 
+	// Sets the memory ceiling of the search, see node_limit and heap_limit.
+	public static void setMemoryLimit(final int nodes, final double heap)
+	{
+		node_limit = nodes;
+		heap_limit = heap;
+	}
+
+	// Sets whether new leaves should be simulated in batches.
+	public static void setBatch(final boolean on)
+	{
+		batch = on;
+	}
+
+	// Seeds the random number generator.
+	public static void setSeed(final long seed)
+	{
+		rnd.setSeed(seed);
+	}
+
+	// Sets the score that solutions must beat to be reported to the listener, and for solved lines to be extracted.
+	// May be called from another thread during a search.
+	public static void setBaseline(final int score)
+	{
+		baseline = score;
+	}
+
+	// Sets who should receive every new best solution that beats the baseline (null for nobody).
+	public static void setListener(final Consumer<int[]> l)
+	{
+		listener = l;
+	}
+
+	// Sets the time (as given by System.currentTimeMillis()) at which searches stop even if there are resources left,
+	// 0 means no deadline.
+	public static void setDeadline(final long time)
+	{
+		deadline = time;
+	}
+
+	// Sets the schedule deciding when moves are finalized.
+	public static void setSchedule(final Schedule s)
+	{
+		schedule = s;
+	}
+
+	// Sets the policy picking the moves of the playouts.
+	public static void setPolicy(final Policy p)
+	{
+		policy = p;
+	}
+
+	// Sets the constants of the search.
+	public static void setParams(final Params p)
+	{
+		params = p;
+		batcher.setTabuBlocks(p.tabu_blocks);
+	}
+
+	// Returns the constants of the search.
+	public static Params getParams()
+	{
+		return params;
+	}
+
+	// Makes metaSolve() carry up to the given number of solved nodes, and as many priors, from each lap to the next (0 for none).
+	// A lap only solves nodes if its tree reaches the end of the game, on 15x15 boards with 5 colors that takes about 10^6
+	// resources per lap, with fewer only priors are carried.
+	public static void setCarry(final int nodes)
+	{
+		carry_limit = nodes;
+	}
+
+	// Returns the number of solved nodes carried from lap to lap by the latest metaSolve(), in all.
+	public static int getCarried()
+	{
+		return carried;
+	}
+
+	// Sets the share of the resources spent on WarmStart (0, the default, skips it).
+	public static void setWarmStart(final double share)
+	{
+		warm_share = share;
+	}
+
+	// Makes searches write a snapshot to the given file every given number of ms, and when they end (null for never).
+	// A search can be continued from its snapshot by resume().
+	public static void setCheckpoint(final String file, final long every)
+	{
+		checkpoint = file;
+		checkpoint_every = every;
+	}
+
+	// Returns the number of iterations run by all searches so far, the progress of a search is the difference.
+	// While a search runs this lags behind by up to 255 iterations.
+	public static long getIterations()
+	{
+		return iterations;
+	}
+
 	// Yields a solution for the given board using simlim resources.
 	public static int[] solve(final int[] board, final int simlim)
 	{
@@ -56,55 +205,389 @@ public class MCTS
 		mcts_reset(); //Reset values to starting values.
 		start_lim = inspect_lim = simlim;
 
-		//Allocate resources for the S first moves.
-		final int S = 30;
-		final int[] resource_frame = new int[S];
-		for(int i = 0, left = simlim; i<S; i++)
+		schedule.reset(simlim);
+		int frame_used = 0; //Resources used on the current level.
+
+		//Create the root node, the search is re-rooted at the chosen child whenever a move is finalized.
+		Node root = new Node(board);
+
+		//The finalized moves (from index 1), and the score they accumulate.
+		final int[] line = new int[xs*ys/2];
+		int line_cum = 0;
+
+		//Start with a quick solution, it's the bar to beat and the tree is seeded with its line.
+		if(warm_share>0)
 		{
-			resource_frame[i] = (int)Math.max(64*32, left/7.0);
-			left -= resource_frame[i];
+			final int slice = (int)(simlim*warm_share);
+			best = WarmStart.solve(board, slice, rnd.nextLong());
+			inspect_lim -= slice;
+			seedLine(root, best);
+			if(listener!=null && best[0]>baseline) listener.accept(best);
 		}
-		int frame_lim = resource_frame[0];
 
-		//Create the root node.
-		Node root = new Node(board);
+		return search(board, root, line, line_cum, frame_used);
+	}
+
+	// Runs iterations from the given root, below the finalized moves line[1..break_depth] scoring line_cum,
+	// until the resources are used up. frame_used resources have already been spent on the current level.
+	// (board is the board of the search, before the finalized moves.)
+	private static int[] search(final int[] board, Node root, final int[] line, int line_cum, int frame_used)
+	{
+		//Number of nodes left after the latest eviction.
+		int evicted = 0;
+		search_root = root;
+		checkpoint_next = System.currentTimeMillis()+checkpoint_every;
 
 		//Runs iterations of MCTS as long there's resources.
 		while(inspect_lim>0)
 		{
+			++iter;
+
+			//Publish the progress, and stop at the deadline, the clock is only inspected now and then.
+			if((iter&255)==0)
+			{
+				iterations = iter;
+				if(deadline>0 && System.currentTimeMillis()>=deadline) break;
+			}
+
+			//Keep the tree below the memory ceiling, the heap is only inspected now and then.
+			if(map.size()>=node_limit || ((iter&1023)==0 && map.size()>evicted+(evicted>>3) && overHeap()))
+				evicted = evict(root);
+
+			//Time for a snapshot, the clock is only inspected now and then.
+			if((iter&1023)==0 && checkpoint!=null && System.currentTimeMillis()>=checkpoint_next)
+			{
+				snapshot(board, root, line, line_cum, frame_used);
+				checkpoint_next = System.currentTimeMillis()+checkpoint_every;
+			}
+
 			final int tmp = inspect_lim;
 
 			bonus = solved = false; //Reset values.
 
-			final int len = iterate(root,0,1); //Run an iteration.
+			final int len = iterate(root,line_cum,break_depth+1); //Run an iteration.
 
-			if(h[0]>best[0]) best = copyOf(h,len); //Store solution if new best.
+			if(len>=0) //Prepend the finalized moves.
+			{
+				System.arraycopy(line,1,h,1,break_depth);
+				h[0] += line_cum;
+				if(h[0]>best[0]) //Store solution if new best.
+				{
+					best = copyOf(h,len);
+					if(listener!=null && best[0]>baseline) listener.accept(best);
+				}
+			}
 
-			frame_lim -= tmp - inspect_lim; //Subtract the number of used resources in the iteration from the allocated resources.
+			frame_used += tmp - inspect_lim; //Add the number of used resources in the iteration to this level.
 
-			//We have run out of resources for this move... traverse down one level!
-			if(frame_lim<=0)
+			//The schedule says this move is done... traverse down one level!
+			if(levelDone(root, frame_used))
 			{
-				break_depth++;
-				frame_lim = break_depth>=S ? inspect_lim : resource_frame[break_depth];
+				frame_used = 0;
+
+				final int bi = finalized(root);
+				if(bi>=0) //Otherwise there's no child to finalize yet, keep searching at this level.
+				{
+					break_depth++;
+					line[break_depth] = root.moves[2*bi];
+					line_cum += root.score[bi];
+					search_root = root = reroot(root,bi);
+				}
 			}
 		}
 
+		iterations = iter;
+		if(checkpoint!=null) snapshot(board, root, line, line_cum, frame_used);
 		return best;
 	}
 
+	/*** <Params: The tunable constants> ***/
+	//The constants of the search, the defaults were tuned for 10*64*10000 resources on 15x15 boards with 5 colors (see Tune).
+	public static class Params
+	{
+		//The explorative factor of new nodes.
+		public final double c;
+
+		//The fraction of the resources left below which the explorative factors of nodes without terminal nodes decay,
+		// by decay per visit down to floor.
+		public final double urgency, decay, floor;
+
+		//The factor by which a terminal node increases the explorative factors of its ancestors.
+		public final double leafhit;
+
+		//Playouts avoid the tabu color while more than tabu_blocks blocks are left.
+		public final int tabu_blocks;
+
+		public Params(final double c, final double urgency, final double decay, final double floor, final double leafhit, final int tabu_blocks)
+		{
+			this.c = c; this.urgency = urgency; this.decay = decay; this.floor = floor; this.leafhit = leafhit; this.tabu_blocks = tabu_blocks;
+		}
+
+		public Params()
+		{
+			this(0.021 * 5000, 0.30, 0.9995, 8, 1.05, 48);
+		}
+
+		// Parses the format of toString().
+		public static Params parse(final String s)
+		{
+			final String[] f = s.trim().split("\\s+");
+			return new Params(Double.parseDouble(f[0]), Double.parseDouble(f[1]), Double.parseDouble(f[2]), Double.parseDouble(f[3]),
+				Double.parseDouble(f[4]), Integer.parseInt(f[5]));
+		}
+
+		// Returns the constants separated by spaces, in the order of the constructor.
+		public String toString()
+		{
+			return c+" "+urgency+" "+decay+" "+floor+" "+leafhit+" "+tabu_blocks;
+		}
+	}
+	/*** </Params> ***/
+
+	/*** <Policies: How the playouts pick their moves> ***/
+	//Features of the board of a playout, counted once when it starts and kept up to date move by move.
+	public static class Features
+	{
+		//The number of blocks of each color (from index 1), and in all.
+		public final int[] cnt = new int[colors+1];
+		public int blocks;
+
+		//As of the latest move generation: the number of groups of size 1,
+		// and the number of generated moves, and the size of the largest and the total size of their groups.
+		public int onecnt, groups, largest, area;
+
+		// Counts the blocks of the given board.
+		void count(final int[] board)
+		{
+			fill(cnt, 0);
+			for(int i = 0, end = Board.end(board); i<end; i++) ++cnt[board[i]];
+			cnt[0] = blocks = 0;
+			for(int c = 1; c<=colors; c++) blocks += cnt[c];
+		}
+
+		// Records the group sizes of the len/2 moves just generated into m.
+		void sizes(final Board.Moves m, final int len)
+		{
+			onecnt = m.onecnt;
+			groups = len>>1;
+			largest = area = 0;
+			for(int i = 1; i<len; i+=2)
+			{
+				area += m.mvs[i];
+				if(m.mvs[i]>largest) largest = m.mvs[i];
+			}
+		}
+	}
+
+	//Picks the moves of a playout. A policy is used by one search at a time, so it may keep the state of the current playout.
+	public interface Policy
+	{
+		// Called when a playout starts, f holds the features of its board.
+		void start(Features f, Random rnd);
+
+		// Generates the moves to pick from on the given board into m (as Board.Moves.moves() does),
+		// and returns their number times 2, which is 0 only at the end of the game.
+		int moves(int[] board, Board.Moves m, Features f);
+
+		// Returns the index in m.mvs of the move to play among the len/2 generated ones.
+		int pick(int[] board, Board.Moves m, int len, Features f, Random rnd);
+	}
+
+	// Returns the built-in policy of the given name: random, tabu, size or column.
+	public static Policy policy(final String name)
+	{
+		switch(name)
+		{
+			case "random": return new RandomPolicy();
+			case "tabu": return new TabuPolicy();
+			case "size": return new SizePolicy();
+			case "column": return new ColumnPolicy();
+			default: throw new IllegalArgumentException("Unknown policy "+name+".");
+		}
+	}
+
+	//Plays uniformly random moves.
+	public static class RandomPolicy implements Policy
+	{
+		public void start(final Features f, final Random rnd){}
+
+		public int moves(final int[] board, final Board.Moves m, final Features f)
+		{
+			return m.moves(board);
+		}
+
+		public int pick(final int[] board, final Board.Moves m, final int len, final Features f, final Random rnd)
+		{
+			return 2*rnd.nextInt(len>>1);
+		}
+	}
+
+	//TabuColorRandom, the default: the most common color (ties broken at random) is never removed while there are
+	// more than Params.tabu_blocks blocks, unless nothing else can be, other moves are uniformly random.
+	public static class TabuPolicy extends RandomPolicy
+	{
+		//The tabu color of the current playout.
+		int tabu;
+
+		public void start(final Features f, final Random rnd)
+		{
+			tabu = 1;
+			for(int c = 2, eq = 1; c<=colors; c++)
+				if(f.cnt[c]>f.cnt[tabu]){ tabu = c; eq = 1; }
+				else if(f.cnt[c]==f.cnt[tabu] && ++eq*rnd.nextDouble()<1) tabu = c;
+		}
+
+		public int moves(final int[] board, final Board.Moves m, final Features f)
+		{
+			return f.blocks>params.tabu_blocks ? m.tabuMoves(board,tabu) : m.moves(board);
+		}
+	}
+
+	//As TabuPolicy, but picks a move with probability proportional to the square of its area, so large groups go first.
+	public static class SizePolicy extends TabuPolicy
+	{
+		public int pick(final int[] board, final Board.Moves m, final int len, final Features f, final Random rnd)
+		{
+			int sum = 0;
+			for(int i = 1; i<len; i+=2) sum += m.mvs[i]*m.mvs[i];
+			int r = rnd.nextInt(sum), mv = 0;
+			while(mv+2<len && (r -= m.mvs[mv+1]*m.mvs[mv+1])>=0) mv += 2;
+			return mv;
+		}
+	}
+
+	//As TabuPolicy, but picks a move with probability proportional to the height above the floor of the cell the move is made at,
+	// the first cell of the group found by the scan: its top cell in its leftmost column. So the board tends to be worn down
+	// from the top and columns aren't emptied early.
+	public static class ColumnPolicy extends TabuPolicy
+	{
+		public int pick(final int[] board, final Board.Moves m, final int len, final Features f, final Random rnd)
+		{
+			int sum = 0;
+			for(int i = 0; i<len; i+=2) sum += ys-m.mvs[i]%ys;
+			int r = rnd.nextInt(sum), mv = 0;
+			while(mv+2<len && (r -= ys-m.mvs[mv]%ys)>=0) mv += 2;
+			return mv;
+		}
+	}
+	/*** </Policies> ***/
+
+	/*** <Schedules: When to finalize a move> ***/
+	//Decides when the move of the current level should be finalized.
+	public interface Schedule
+	{
+		// Called when a search with simlim resources starts.
+		void reset(int simlim);
+
+		// Returns whether the move of the given level (the number of finalized moves) should be finalized,
+		// given the resources used on the level and the resources left overall.
+		// t1 and s1 are the visits and the best score (as seen from the root) of the child that would be chosen,
+		// t2 and s2 are the most visits and the best score among its siblings.
+		boolean done(int level, int used, int left, int t1, int s1, int t2, int s2);
+	}
+
+	//The original schedule: The first 30 levels get a seventh of the resources left (but at least 64*32) each,
+	// the rest of the resources are spent on the 31:st level.
+	public static class StaticSchedule implements Schedule
+	{
+		private static final int S = 30;
+		private final int[] resource_frame = new int[S];
+
+		public void reset(final int simlim)
+		{
+			for(int i = 0, left = simlim; i<S; i++)
+			{
+				resource_frame[i] = (int)Math.max(64*32, left/7.0);
+				left -= resource_frame[i];
+			}
+		}
+
+		public boolean done(final int level, final int used, final int left, final int t1, final int s1, final int t2, final int s2)
+		{
+			return level<S && used>=resource_frame[level];
+		}
+	}
+
+	//A schedule that finalizes a level early when the chosen child clearly dominates its siblings,
+	// by visits or by score, and spends the saved resources on levels where the choice is still close.
+	//Each level is given a seventh of the resources left (but at least 64*32), as by StaticSchedule.
+	public static class AdaptiveSchedule implements Schedule
+	{
+		//The visit ratio and the score margin at which a child dominates,
+		// and the fraction of its budget that a level gets at least.
+		private final double ratio, margin, least;
+
+		//The current level, its budget, and the resources saved by levels that were finalized early.
+		private int level, budget, bank;
+
+		public AdaptiveSchedule(final double ratio, final double margin, final double least)
+		{
+			this.ratio = ratio; this.margin = margin; this.least = least;
+		}
+
+		public AdaptiveSchedule()
+		{
+			this(4.0, 200, 0.25);
+		}
+
+		public void reset(final int simlim)
+		{
+			level = -1; bank = 0;
+		}
+
+		public boolean done(final int level, final int used, final int left, final int t1, final int s1, final int t2, final int s2)
+		{
+			if(level!=this.level){ this.level = level; budget = (int)Math.max(64*32, (left+used)/7.0); }
+			if(used<budget*least) return false;
+
+			if(t1>=ratio*t2 || (long)s1-s2>=margin) //Dominated, save what's left of the budget.
+			{
+				bank += Math.max(budget-used, 0);
+				return true;
+			}
+
+			//Contested, spend (at most another budget of) saved resources.
+			if(used<budget+Math.min(bank, budget)) return false;
+			bank -= Math.min(used-budget, bank);
+			return true;
+		}
+	}
+
+	// Asks the schedule whether the move of the current level, where used resources have been spent, is done.
+	private static boolean levelDone(final Node root, final int used)
+	{
+		final int bi = root.child==null ? -1 : finalized(root);
+		int t1 = 0, s1 = 0, t2 = 0, s2 = Integer.MIN_VALUE/2;
+		if(bi>=0)
+		{
+			t1 = root.child[bi].t; s1 = root.child[bi].topscore+root.score[bi];
+			for(int i = 0; i<root.child.length; i++)
+			{
+				final Node kid = root.child[i];
+				if(i==bi || kid==null || kid.t<0 || !root.own[i]) continue;
+				t2 = Math.max(t2, kid.t);
+				s2 = Math.max(s2, kid.topscore+root.score[i]);
+			}
+		}
+		return schedule.done(break_depth, used, inspect_lim, t1, s1, t2, s2);
+	}
+	/*** </Schedules> ***/
+
 	//Resets possible traces of previous runs.
 	private static void mcts_reset()
 	{
-		best[0] = -225*225-1; map.clear();
+		best = new int[]{-225*225-1}; map.clear(); //A new array, the previous one may have been handed out.
+		map.putAll(carry); //The solved nodes of the previous lap of metaSolve(), if any.
 		break_depth = 0;
-		early_terminal = false;
+		solved = early_terminal = false;
 	}
 
 	// Runs an iteration of MCTS at the node at the given depth.
 	// Up until reaching the node we have accumulated 'cum' points.
 	private static int iterate(final Node root, final int cum, final int depth)
 	{
+		if(root.child==null) root.expand(); //Second visit of the node.
+
 		final Node[] child = root.child;
 		final boolean[] own = root.own;
 		final int[] score = root.score;
@@ -117,11 +600,12 @@ public class MCTS
 		{
 			h[0] = root.topscore;
 			leafhit(root);
-			root.p.deactivateChild(root);
+			if(root.p!=null) root.p.deactivateChild(root);
 			root.t *= -1;
+			collapse(root);
 			--inspect_lim;
 			solved = true;
-			early_terminal |= inspect_lim>start_lim*urgency_limit;
+			early_terminal |= inspect_lim>start_lim*params.urgency;
 			return -1;
 		}
 
@@ -132,89 +616,59 @@ public class MCTS
 		if((depth&7)==0) inspect_lim--;
 
 		//This is the LU-extension.
-		if(!root.hasLeafHit && inspect_lim<start_lim*urgency_limit) root.c = Math.max(root.c*0.9995, 8);
+		if(!root.hasLeafHit && inspect_lim<start_lim*params.urgency) root.c = Math.max(root.c*params.decay, params.floor);
 
 		//Best index, chosen null child idx, number of encountered null-children.
 		int bi = -1, bnull = -1, nullcnt = 0;
 
-		if(depth<=break_depth) //The next child has been finalized on this level.
-		{
-			/*final int[] mvs = root.moves;
-			for(int i = 0; i<len; i++)
-				if(mvs[i<<1]==best[depth])
-				{
-					if(!own[i] && cum+score[i]>=child[i].cum) root.activateChild(i,cum+score[i]);
-					bi = i;
-					break;
-				}*/
+		//Let's choose next child based on UCB!
+		final double lnt = Math.log(root.t), c = root.c;
+		double buct = Double.NEGATIVE_INFINITY;
 
-			int eq = 0;
-			for(int i = 0; i<len; i++)
+		for(int i = 0; i<len; i++)
+		{
+			if(child[i]==null) //Null-preference.
 			{
-				if(child[i]==null) //If a level is allocated few resources this could happen...
-				{
-					if(rnd.nextDouble()*++nullcnt<=1){ bnull = i; }
-					continue;
-				}
-
-				if(!own[i] && cum+score[i]>=child[i].cum) root.activateChild(i,cum+score[i]);
-				if(child[i].t>=0 && own[i])
-					if(bi<0 || child[i].topscore>child[bi].topscore){ bi = i; eq = 1; }
-					//else if(child[i].topscore==child[bi].topscore && rnd.nextDouble()*++eq<=1) bi = i;
+				if(rnd.nextDouble()*++nullcnt<=1){ bnull = i; }
 			}
-
-			if(bnull>=0) bi = bnull; //Null-preference has higher priority than finalized choice.
-			if(bi<0){ break_depth--; return -1;} //If extremely few resources are allocated for some levels this could happen...
-		}
-		else //Let's choose next child based on UCB!
-		{
-			final double lnt = Math.log(root.t), c = root.c;
-			double buct = Double.NEGATIVE_INFINITY;
-
-			for(int i = 0; i<len; i++)
+			else if(child[i].t>=0 && own[i]) //Ordinary case.
 			{
-				if(child[i]==null) //Null-preference.
-				{
-					if(rnd.nextDouble()*++nullcnt<=1){ bnull = i; }
-				}
-				else if(child[i].t>=0 && own[i]) //Ordinary case.
-				{
-					final double tmp = cum+score[i]+child[i].avg + c*Math.sqrt(lnt/child[i].t);
-					if(tmp>buct){ bi = i; buct = tmp; }
-				}
-				else if(!own[i] && cum+score[i]>child[i].cum) //Reconquering.
+				final double tmp = cum+score[i]+child[i].mean() + c*Math.sqrt(lnt/(child[i].t+child[i].pt));
+				if(tmp>buct){ bi = i; buct = tmp; }
+			}
+			else if(!own[i] && (cum+score[i]>child[i].cum || child[i].p==null)) //Reconquering (orphans too).
+			{
+				if(child[i].t<0) //Solved children should not be "owned".
 				{
-					if(child[i].t<0) //Solved children should not be "owned".
+					child[i].cum = cum+score[i];
+					int j = -1;
+					if(child[i].cum + child[i].topscore > Math.max(best[0],baseline)) //Yippie, new highscore.
 					{
-						child[i].cum = cum+score[i];
-						int j = -1;
-						if(child[i].cum + child[i].topscore > best[0]) //Yippie, new highscore.
-						{
-							j = solvedPlayout(child[i], depth+1);
-							h[depth] = root.moves[2*i];
-							h[0] += score[i];
-						}
-
-						if(j<0) continue;
-						else return j;
+						j = solvedPlayout(child[i], depth+1);
+						h[depth] = root.moves[2*i];
+						h[0] += score[i];
 					}
 
-					root.activateChild(i,cum+score[i]);
-
-					final double tmp = cum+score[i]+child[i].avg + c*Math.sqrt(lnt/child[i].t);
-					if(tmp>buct){ bi = i; buct = tmp; }
+					if(j<0) continue;
+					else return j;
 				}
-			}
 
-			if(bnull>=0) bi = bnull; //Null-preference.
-			if(bi<0) //There was no suitable child.
-			{
-				root.p.deactivateChild(root);
-				if(!root.isAlive()){ leafhit(root); root.live = 0; root.t *= -1; }
-				return -1;
+				root.activateChild(i,cum+score[i]);
+
+				final double tmp = cum+score[i]+child[i].mean() + c*Math.sqrt(lnt/(child[i].t+child[i].pt));
+				if(tmp>buct){ bi = i; buct = tmp; }
 			}
 		}
 
+		if(bnull>=0) bi = bnull; //Null-preference.
+		if(bi<0) //There was no suitable child.
+		{
+			if(root.p!=null) root.p.deactivateChild(root);
+			else --inspect_lim; //The root of the search, make sure we don't get stuck here.
+			if(!root.isAlive()){ leafhit(root); root.live = 0; root.t *= -1; collapse(root); }
+			return -1;
+		}
+
 		final int[] mvs = root.moves; //Quick-access to the moves.
 
 		//Get the next node to traverse down... it could be an unexpanded child...
@@ -222,11 +676,16 @@ public class MCTS
 
 		final boolean leafHitChoice = nxt.t<0; //That child could have been found by somebody else and solved.
 
+		final boolean many = batch && nxt.t==0 && nxt!=deadchild; //Should the new child be simulated along with its siblings?
+
 		final int j =
-		nxt.t==0 || nxt==deadchild ? tabuPlayout(nxt, depth+1) : //Ordinary playout or duplicate-hit.
+		many ? batchPlayout(root, bi, cum, depth+1) : //Playouts of several new children.
+		nxt.t==0 || nxt==deadchild ? playout(nxt, depth+1) : //Ordinary playout or duplicate-hit.
 		nxt.t>0 ? iterate(nxt, cum+score[bi], depth+1) : //Move on to next level in tree.
 		solvedPlayout(nxt, depth+1); //We picked up a node that was already completely solved.
 
+		if(many) bi = batch_bi; //The move of the best playout is recorded.
+
 		if(j>=0) //Let's record our move...
 		{
 			h[depth] = mvs[2*bi];
@@ -237,15 +696,42 @@ public class MCTS
 		if(child[bi].t<0) //If our child was solved... (Do note!!! child[bi] == nxt is not necessarily true.)
 		{
 			if(leafHitChoice) leafhit(root); //Either it already was then we should account for the leaf hit...
-			if(--root.live==0){  root.p.deactivateChild(root); root.t *= -1;} //...or it just became.
+			if(--root.live==0){ if(root.p!=null) root.p.deactivateChild(root); root.t *= -1; collapse(root); } //...or it just became.
 		}
 
 		return j; //Return length of solution.
 	}
 
+	//Walks the given solution down the tree from root, creating the nodes on the way,
+	// and records its score in them as if an iteration had played it.
+	private static void seedLine(final Node root, final int[] sol)
+	{
+		final Node[] path = new Node[sol.length];
+		final int[] cum = new int[sol.length];
+		int len = 1;
+		path[0] = root;
+		for(Node node = root; len<sol.length; len++)
+		{
+			if(node.child==null) node.expand();
+
+			int bi = -1;
+			for(int i = 0; i<node.child.length; i++) if(node.moves[2*i]==sol[len]) bi = i;
+			if(bi<0) break; //The move was pruned.
+
+			final Node nxt = node.child[bi]==null ? getChild(node, bi, node.moves[2*bi], node.moves[2*bi+1], cum[len-1]) : node.child[bi];
+			if(nxt.p!=node || nxt.t<0) break;
+			cum[len] = cum[len-1]+node.score[bi];
+			path[len] = node = nxt;
+		}
+
+		for(int i = 0; i<len; i++) path[i].update(sol[0]-cum[i]);
+	}
+
 	//Used in case of consistent duplication detection and state pruning.
 	private static void cancel(final Node root)
 	{
+		if(root.child==null){ root.p.deactivateChild(root); return; }
+
 		final Node[] child = root.child;
 		final boolean[] own = root.own;
 		final int len = child.length;
@@ -256,19 +742,24 @@ public class MCTS
 		root.p.deactivateChild(root);
 	}
 
-	//Runs a random simulation from the node leaf at the given depth.
+	//Runs a simulation from the node leaf at the given depth, picking the moves by the current policy (see Policy).
 	//The length of the solution is returned.
 	private static int playout(final Node leaf, final int depth)
 	{
 		if(leaf.t<0) return -1;
 
-		inspect_lim--;
+		inspect_lim--; //Account for inspection of state.
 
 		final int[] board = copyOf(leaf.board,xs*ys);
-		h[0] = 0;
+		features.count(board);
+		policy.start(features, rnd);
+
+		h[0] = 0; //Reset score.
+
 		for(int j = depth; ; inspect_lim--)
 		{
-			final int len = Board.moves(board);
+			final int len = policy.moves(board, scratch, features);
+			features.sizes(scratch, len);
 
 			if(len==0) //End of game.
 			{
@@ -277,53 +768,48 @@ public class MCTS
 				return j;
 			}
 
-			//Performs a random move.
-			final int mv = 2*rnd.nextInt(len>>1), i = h[j++] = Board.mvs[mv];
-			h[0] = Board.doMove(board, i, Board.mvs[mv+1], h[0]);
+			//Perform the chosen move, account for removed blocks.
+			final int mv = policy.pick(board, scratch, len, features, rnd), i = h[j++] = scratch.mvs[mv], area = scratch.mvs[mv+1];
+			features.cnt[board[i]] -= area; features.blocks -= area;
+			h[0] = Board.doMove(board, i, area, h[0]);
 		}
 	}
 
-	//Runs a simulation from the node leaf at the given depth, using the
-	// TabuColorRandom default policy. The length of the solution is returned.
-	private static int tabuPlayout(final Node leaf, final int depth)
+	//Runs simulations from the new child #bi of root, and from up to Batch.lanes-1 other unexpanded children of root,
+	// in lockstep using the TabuColorRandom default policy (whatever the policy is). The best simulation is recorded in h as by playout(),
+	// and the index of its child is stored in batch_bi. The other simulations are added to root and its ancestors directly.
+	//The length of the best solution is returned.
+	private static int batchPlayout(final Node root, final int bi, final int cum, final int depth)
 	{
-		if(leaf.t<0) return -1;
-
-		inspect_lim--; //Account for inspection of state.
-
-		final int[] board = copyOf(leaf.board,xs*ys);
+		final Node[] child = root.child;
+		final int[] mvs = root.moves, score = root.score;
 
-		//Pick the tabu color.
-		for(int i = 1; i<=colors; i++) h[i] = 0;
-		for(int i = 0; i<ys*xs; i++) ++h[board[i]];
-		int tabu = 1; h[0] = 1;
-		for(int i = 2; i<=colors; i++)
-			if(h[i]>h[tabu]){ tabu=i; h[0]=1; }
-			else if(h[i]==h[tabu] && ++h[0]*rnd.nextDouble()<1) tabu = i;
+		//Expand the siblings, those that turn out to be duplicates are not simulated.
+		int n = 0;
+		batch_idx[n++] = bi;
+		for(int i = 0; i<child.length && n<Batch.lanes; i++)
+			if(child[i]==null && getChild(root, i, mvs[2*i], mvs[2*i+1], cum).t==0)
+				batch_idx[n++] = i;
 
-		h[0] = 0; //Reset score.
+		for(int l = 0; l<n; l++) batcher.load(l, child[batch_idx[l]].board);
+		inspect_lim -= batcher.run(n, rnd);
 
-		//Count number of blocks left.
-		int blocks = 0;
-		for(int i = 1; i<=colors; i++) blocks += h[i];
+		//Pick the best simulation (as seen from root).
+		int b = 0;
+		for(int l = 1; l<n; l++)
+			if(score[batch_idx[l]]+batcher.score[l] > score[batch_idx[b]]+batcher.score[b]) b = l;
 
-		for(int j = depth; ; inspect_lim--)
+		for(int l = 0; l<n; l++)
 		{
-			//We only use the simulation strategy if there's a significant number of blocks.
-			final int len = blocks>48 ? Board.tabuMoves(board,tabu) : Board.moves(board);
-
-			if(len==0) //End of game.
-			{
-				h[0] += Board.endscore(board); bonus = Board.isEmpty(board);
-				leaf.update(h[0]);
-				return j;
-			}
-
-			//Choose ranom move, perform move, account for removed blocks.
-			final int mv = 2*rnd.nextInt(len>>1), i = h[j++] = Board.mvs[mv];
-			h[0] = Board.doMove(board, i, Board.mvs[mv+1], h[0]);
-			blocks -= Board.mvs[mv+1];
+			final Node kid = child[batch_idx[l]];
+			kid.update(batcher.score[l]);
+			if(l!=b) add(kid, root);
 		}
+
+		batch_bi = batch_idx[b];
+		h[0] = batcher.score[b]; bonus = batcher.clears[b];
+		System.arraycopy(batcher.line[b], 0, h, depth, batcher.len[b]);
+		return depth+batcher.len[b];
 	}
 
 	//Extracts the optimal solution from the solved node root.
@@ -335,6 +821,15 @@ public class MCTS
 		h[0] = 0;
 		for(int j = depth; ;)
 		{
+			if(root.line!=null) //The rest of the line is stored, see collapse().
+			{
+				final int[] line = root.line;
+				for(int k = j; k<j+line.length; k++) if((k&7)==0) --inspect_lim; //Traversal cost.
+				h[0] += line[0]; bonus = root.clears;
+				System.arraycopy(line, 1, h, j, line.length-1);
+				return j+line.length-1;
+			}
+
 			if((j&7)==0) --inspect_lim; //Traversal cost.
 
 			final Node[] child = root.child;
@@ -362,6 +857,41 @@ public class MCTS
 		}
 	}
 
+	//Replaces the subtree of the node that was just solved by its principal line, the line solvedPlayout() would follow.
+	//The children it is the parent of are dropped from map, and the node lets go of its children, moves and board.
+	//(The root of the search keeps its subtree, the schedule still looks at it.)
+	private static void collapse(final Node node)
+	{
+		final Node[] child = node.child;
+		if(node==search_root || child==null) return; //Already collapsed (or never expanded).
+
+		if(child.length==0) //End of game.
+		{
+			node.line = new int[]{node.topscore};
+			node.clears = Board.isEmpty(node.board);
+		}
+		else
+		{
+			int bi = 0;
+			for(int i = 1; i<child.length; i++)
+				if(child[i].topscore + node.score[i]>child[bi].topscore + node.score[bi])
+					bi = i;
+
+			if(child[bi].line==null) collapse(child[bi]); //Its line wasn't built yet, build it first.
+			final int[] rest = child[bi].line;
+			if(rest==null) return; //Its subtree is gone.
+			node.line = new int[rest.length+1];
+			node.line[0] = node.score[bi]+rest[0];
+			node.line[1] = node.moves[2*bi];
+			System.arraycopy(rest, 1, node.line, 2, rest.length-1);
+			node.clears = child[bi].clears;
+
+			for(int i = 0; i<child.length; i++) if(child[i].p==node) unregister(child[i]);
+		}
+
+		node.child = null; node.own = null; node.moves = node.score = null; node.board = null;
+	}
+
 	//Global node used to represent dead ends etc.
 	private static final Node deadchild = new Node();
 
@@ -384,6 +914,12 @@ public class MCTS
 				if(p.cnt==0 && p.p!=null) p.p.deactivateChild(p);
 				return deadchild;
 			}
+			else if(tmp.t<0) //Solved (e.g. carried from the previous lap), claimed for the better path but never owned.
+			{
+				tmp.cum = score+cum;
+				if(p.cnt==0 && p.p!=null) p.p.deactivateChild(p);
+				return tmp;
+			}
 			else
 			{
 				p.activateChild(bi,score+cum); //Swap parent.
@@ -391,8 +927,9 @@ public class MCTS
 			}
 		}
 
-		final Node kid = new Node(p,board,cum+score);
+		final Node kid = new Node(p,bi,board,cum+score,hash);
 		map.put(hash, kid);
+		if(!priors.isEmpty()) prior(kid);
 		//------
 
 		return p.child[bi] = kid;
@@ -403,48 +940,68 @@ public class MCTS
 	{
 		Node p; //Parent node.
 
+		int idx; //The index of this node among the children of p.
+
 		//The board, the available moves, the score of move #i.
-		final int[] board, moves, score;
+		//(Only the board is set until the node is expanded, see expand(), and none are kept once it's collapsed, see collapse().)
+		int[] board;
+		int[] moves, score;
 
 		//The (best) cumulative score leading to this state.
 		int cum;
 
+		//The zobrist hash of the board, i.e. the key of this node in map.
+		long hash;
+
 		//Number of visits, number of active child nodes, number of unsolved child nodes, best score from this node.
 		int t, cnt, live, topscore; //t<0 --> dead node
 
 		//Is there a terminal node in this subtree.
 		boolean hasLeafHit = false;
 
+		//The principal line of a collapsed solved node (score, then moves), and whether it clears the board.
+		int[] line;
+		boolean clears;
+
 		//An upper bound on the maximum possible score achievable.
-		final int upperscore;
+		int upperscore;
 
 		//Avg score, explorative factor.
-		double avg, c = defaultC*1.00 + rnd.nextDouble()*defaultC*0.00;
+		double avg, c = params.c;
+
+		//The prior average score and visits carried from the previous lap of metaSolve(), only UCB counts them (see prior()).
+		double pavg;
+		int pt;
 
 		//Child nodes.
-		final Node[] child;
+		Node[] child;
 
 		//If we are the owner of node #1.
-		final boolean[] own;
+		boolean[] own;
 
 		//Creates a null-child.
 		Node()
 		{
-			board = moves = score = null;
-			child = null;
+			board = null;
 			t = -1;
-			own = null; upperscore = 0;
 		}
 
 		//Creates a root representing the given board.
+		//The node is a stub until expand() is called.
 		Node(final int[] b) //Root
 		{
 			board = b;
-			moves = Board.getMoves(b);
 			t = 0;
 			avg = 0;
 			topscore = Integer.MIN_VALUE;
-			upperscore = Board.upperscore(b);
+		}
+
+		//Generates the moves and allocates the child arrays of the node.
+		//Most nodes only get a single playout, so this is postponed until the second visit.
+		void expand()
+		{
+			moves = Board.getMoves(board);
+			upperscore = Board.upperscore(board);
 			child = new Node[live = cnt = moves.length/2];
 			own = new boolean[cnt];
 			fill(own, true);
@@ -452,15 +1009,22 @@ public class MCTS
 			for(int i = 1; i<moves.length; i+=2) score[i>>1] = (moves[i]-2)*(moves[i]-2);
 		}
 
-		//Creates a normal node representing the given board b, with parent state/node p,
+		//Creates a normal node representing the given board b with the given hash, child #i of parent state/node p,
 		//that has been reached by an accumulated score of c.
-		Node(final Node p, final int[] b, final int c)
+		Node(final Node p, final int i, final int[] b, final int c, final long hash)
 		{
 			this(b);
-			this.p = p;
+			this.p = p; idx = i;
+			this.hash = hash;
 			cum = c;
 		}
 
+		//The average score as UCB sees it, counting the prior.
+		double mean()
+		{
+			return pt==0 ? avg : (avg*t+pavg*pt)/(t+pt);
+		}
+
 		//Records an iteration yielding the given score in this node.
 		void update(int sample)
 		{
@@ -472,50 +1036,35 @@ public class MCTS
 		}
 
 		//Revokes this node's ownership of the given child node.
+		//(This node must be the (latest) parent of kid.)
 		void deactivateChild(final Node kid)
 		{
-			for(int i = 0; i<child.length; i++)
-				if(child[i]==kid)
-				{
-					if(own[i])
-					{
-						subtract(child[i],this);
-						if(--cnt==0 && p!=null) p.deactivateChild(this);
-						own[i] = false;
-					}
-
-					break;
-				}
+			final int i = kid.idx;
+			if(own[i])
+			{
+				subtract(kid,this);
+				if(--cnt==0 && p!=null) p.deactivateChild(this);
+				own[i] = false;
+			}
 		}
 
 		//Makes this node the owner of child #i reached using the given cumulative score.
 		void activateChild(final int i, final int cum) //cum includes score[i].
 		{
 			final Node kid = child[i];
-			kid.p.deactivateChild(kid);
+			if(kid.p!=null) kid.p.deactivateChild(kid);
+			else if(!map.containsKey(kid.hash)) map.put(kid.hash, kid); //An evicted or dropped node, it's back in the tree.
 			own[i] = true;
 			kid.cum = cum;
-			kid.p = this;
+			kid.p = this; kid.idx = i;
 			++cnt;
 			add(kid,this);
 		}
 
-		//Finds the index of the given child node.
-		int getIndex(final Node kid)
-		{
-			for(int i = 0; i<child.length; i++)
-				if(child[i]==kid)
-					return i;
-			return -1;
-		}
-
 		//Returns whether we own the given child node or not.
 		boolean owns(final Node kid)
 		{
-			for(int i = 0; i<child.length; i++)
-				if(child[i]==kid)
-					return own[i];
-			return false;
+			return kid.p==this && own[kid.idx];
 		}
 
 		//Returns whether there are unsolved child nodes of this node.
@@ -528,10 +1077,296 @@ public class MCTS
 		}
 	}
 
+	/*** <Eviction: To stay below the memory ceiling and to release finalized levels> ***/
+	// Returns whether the heap usage exceeds heap_limit.
+	private static boolean overHeap()
+	{
+		final Runtime rt = Runtime.getRuntime();
+		return rt.totalMemory()-rt.freeMemory() > heap_limit*rt.maxMemory();
+	}
+
+	// Evicts subtrees of the tree rooted at root until a quarter of the nodes are gone,
+	// subtrees with few visits are cut back to unexpanded children, those with the fewest first.
+	// (The unchosen siblings of finalized moves are already gone, see reroot().)
+	// Returns the number of nodes left.
+	private static int evict(final Node root)
+	{
+		final int target = map.size()-(map.size()>>2);
+
+		for(int k = 1; map.size()>target && k<=root.t; k<<=1) prune(root,k,target);
+
+		System.err.println("Evicted down to "+map.size()+" nodes.");
+		return map.size();
+	}
+
+	// Returns the index of the child that is the finalized choice of the given node, or -1 if there is none.
+	// (Same choice as in iterate(), but only among expanded children.)
+	private static int finalized(final Node root)
+	{
+		int bi = -1;
+		for(int i = 0; i<root.child.length; i++)
+			if(root.child[i]!=null && root.child[i].t>=0 && root.own[i])
+				if(bi<0 || root.child[i].topscore>root.child[bi].topscore) bi = i;
+		return bi;
+	}
+
+	// Finalizes move #bi of root: the child becomes the new root, and root and all its siblings are dropped
+	// (together with their hash table entries) since they will never be visited again.
+	private static Node reroot(final Node root, final int bi)
+	{
+		final Node[] child = root.child;
+		for(int i = 0; i<child.length; i++)
+			if(i!=bi && child[i]!=null && child[i].p==root) unregister(child[i]);
+		final Node kid = child[bi];
+		kid.p = null;
+
+		if(map.get(root.hash)==root) map.remove(root.hash);
+		root.child = null; root.own = null; //Nothing of the dropped levels stays reachable through root.
+		return kid;
+	}
+
+	// Cuts subtrees below root with at most k visits back to an unexpanded (null) child, until at most target nodes are left.
+	// Their visits are taken out of the ancestors, they would be counted again if the same board is reached later.
+	private static void prune(final Node root, final int k, final int target)
+	{
+		final Node[] child = root.child;
+		if(child==null) return;
+
+		for(int i = 0; i<child.length && map.size()>target; i++)
+		{
+			final Node kid = child[i];
+			if(kid==null || kid.t<0 || !root.own[i] || kid.p!=root) continue;
+			if(kid.t<=k){ subtract(kid, root); unregister(kid); child[i] = null; }
+			else prune(kid,k,target);
+		}
+	}
+
+	// Removes the given node and the subtree it is the parent of from the hash table.
+	// The nodes are left without parent, so that nodes still reachable through transpositions can be reconquered,
+	// and they no longer own their children, so that a reconquered node never claims a child that was reconquered elsewhere.
+	// The visits of the released children are taken out of their parents, a node that is reconquered only brings its own
+	// (see activateChild()), and its children bring theirs when they are reconquered in turn.
+	private static void unregister(final Node root)
+	{
+		if(map.get(root.hash)==root) map.remove(root.hash);
+		if(carrying) keep(root);
+		root.p = null; //So that subtract() below stops at root.
+		if(root.child!=null) for(int i = 0; i<root.child.length; i++)
+		{
+			final Node kid = root.child[i];
+			if(kid==null || kid.p!=root) continue;
+			unregister(kid);
+			if(root.own[i]){ root.own[i] = false; --root.cnt; if(root.t>0) subtract(kid, root); }
+		}
+	}
+	/*** </Eviction> ***/
+
+	/*** <Carry: What the laps of metaSolve() hand on to each other> ***/
+	//The least visits of a node to be carried as a prior, and the most visits a prior counts as.
+	private static final int prior_visits = 16, prior_weight = 4;
+
+	//Whether the current lap collects what is carried into the next one.
+	private static boolean carrying = false;
+
+	//The solved nodes carried into the current lap (put into map by mcts_reset()), and the priors (average score, visits)
+	// given to new nodes of the current lap, by zobrist hash.
+	private static final HashMap<Long,Node> carry = new HashMap<Long,Node>();
+	private static final HashMap<Long,double[]> priors = new HashMap<Long,double[]>();
+
+	//What the current lap collected for the next one: the solved nodes with the longest lines so far (the shortest on top)
+	// and their zobrist hashes, and priors.
+	private static final PriorityQueue<Node> kept = new PriorityQueue<Node>((a,b) -> Integer.compare(a.line.length, b.line.length));
+	private static final HashSet<Long> kept_hashes = new HashSet<Long>();
+	private static final HashMap<Long,double[]> kept_priors = new HashMap<Long,double[]>();
+
+	//The number of solved nodes carried by the latest metaSolve(), see getCarried().
+	private static int carried = 0;
+
+	// Collects the given node for the next lap, if it's solved or has enough visits and there's room.
+	// When there are carry_limit solved nodes already, the one with the shortest line is dropped,
+	// and a solved node is skipped if one of the same board is kept (a transposition, or a node dropped twice).
+	// Called for the nodes dropped from map during the lap, and for those left in it at the end.
+	private static void keep(final Node node)
+	{
+		if(node.t<0)
+		{
+			if(node.line==null || !kept_hashes.add(node.hash)) return;
+			kept.add(node);
+			if(kept.size()>carry_limit) kept_hashes.remove(kept.poll().hash);
+		}
+		else if(node.t>=prior_visits && kept_priors.size()<carry_limit)
+			kept_priors.put(node.hash, new double[]{node.avg, Math.min(node.t, prior_weight)});
+	}
+
+	// Ends a lap of metaSolve(): chooses the solved nodes and the priors to carry into the next lap.
+	// Solved nodes are collapsed (see collapse()), so each one carries its whole line, and those with the longest lines,
+	// the most moves solved, are carried (see keep()).
+	// They are cut off from the rest of the tree, and any path of the next lap may claim them.
+	private static void carryOver()
+	{
+		for(final Node node : map.values()) keep(node);
+
+		carry.clear();
+		for(final Node node : kept)
+		{
+			node.p = null;
+			node.cum = Integer.MIN_VALUE;
+			carry.put(node.hash, node);
+		}
+		carried += carry.size();
+		priors.clear(); priors.putAll(kept_priors);
+		kept.clear(); kept_hashes.clear(); kept_priors.clear();
+		System.err.println("Carrying "+carry.size()+" solved nodes and "+priors.size()+" priors.");
+	}
+
+	// Gives the new node kid the visits and average score of the same board in the previous lap as a prior, if known.
+	// The prior only steers UCB, it's kept apart from t and avg, which the ancestors account for (see add()).
+	private static void prior(final Node kid)
+	{
+		final double[] pr = priors.get(kid.hash);
+		if(pr!=null){ kid.pavg = pr[0]; kid.pt = (int)pr[1]; }
+	}
+	/*** </Carry> ***/
+
+	/*** <Checkpoints: To survive the death of the process> ***/
+	//Identifies a snapshot file (and its version).
+	private static final int snapshot_magic = 0x53474331;
+
+	//A node of the tree is kept in a snapshot if it has at least 1/tree_share of the visits of the root,
+	// and is at most tree_depth levels below it.
+	private static final int tree_share = 4096, tree_depth = 8;
+
+	// Writes a snapshot of the search to the checkpoint file: the board, the resources, the finalized moves,
+	// the best solution, the state of the random number generator, and the top of the tree.
+	// The file is written next to the checkpoint and renamed over it, so the checkpoint is always a complete snapshot.
+	private static void snapshot(final int[] board, final Node root, final int[] line, final int line_cum, final int frame_used)
+	{
+		//java.util.Random can't tell its state, so it's reseeded with a seed that's stored.
+		final long seed = rnd.nextLong();
+		rnd.setSeed(seed);
+
+		final Path file = Paths.get(checkpoint), tmp = Paths.get(checkpoint+".tmp");
+		try(FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)));
+			out.writeInt(snapshot_magic);
+			for(int i = 0; i<xs*ys; i++) out.writeByte(board[i]);
+			out.writeInt(start_lim); out.writeInt(inspect_lim); out.writeInt(frame_used);
+			out.writeLong(seed);
+			out.writeInt(break_depth); out.writeInt(line_cum);
+			for(int i = 1; i<=break_depth; i++) out.writeInt(line[i]);
+			out.writeInt(best.length);
+			for(final int x : best) out.writeInt(x);
+			writeTree(out, root, Math.max(1, root.t/tree_share), tree_depth);
+			out.flush();
+			ch.force(true);
+		}
+		catch(IOException e){ System.err.println("Could not write the snapshot: "+e); return; }
+
+		try{ Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING); }
+		catch(IOException e){ System.err.println("Could not replace the snapshot: "+e); }
+	}
+
+	// Writes the statistics of node, followed by its kept children (their move index and, recursively, themselves).
+	// Children are kept if they are owned, alive, and have at least least visits.
+	private static void writeTree(final DataOutputStream out, final Node node, final int least, final int depth) throws IOException
+	{
+		out.writeInt(node.t); out.writeDouble(node.avg); out.writeInt(node.topscore); out.writeDouble(node.c);
+		out.writeBoolean(node.hasLeafHit);
+
+		int k = 0;
+		if(depth>0 && node.child!=null)
+			for(int i = 0; i<node.child.length; i++) if(kept(node, i, least)) ++k;
+		out.writeInt(k);
+		if(k==0) return;
+
+		for(int i = 0; i<node.child.length; i++)
+			if(kept(node, i, least))
+			{
+				out.writeInt(i);
+				writeTree(out, node.child[i], least, depth-1);
+			}
+	}
+
+	// Returns whether child #i of node is kept in a snapshot.
+	private static boolean kept(final Node node, final int i, final int least)
+	{
+		return node.own[i] && node.child[i]!=null && node.child[i].p==node && node.child[i].t>=least;
+	}
+
+	// Continues the search saved in the given snapshot (see setCheckpoint()), using the resources it had left.
+	// The finalized moves, the best solution, the random number generator and the top of the tree are restored,
+	// the rest of the tree is grown again. (The state of the schedule isn't saved, it starts over at the saved level.)
+	public static int[] resume(final String snapshot) throws IOException
+	{
+		try(FileChannel ch = FileChannel.open(Paths.get(snapshot), StandardOpenOption.READ))
+		{
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch)));
+			if(in.readInt()!=snapshot_magic) throw new IOException(snapshot+" is not a snapshot.");
+
+			final int[] board = new int[xs*ys];
+			for(int i = 0; i<xs*ys; i++) board[i] = in.readByte();
+
+			mcts_reset();
+			start_lim = in.readInt(); inspect_lim = in.readInt();
+			final int frame_used = in.readInt();
+			rnd.setSeed(in.readLong());
+			schedule.reset(start_lim);
+			System.err.println("Resuming MCTS with "+inspect_lim+" of "+start_lim+" ru left!");
+
+			//Replay the finalized moves to get the board of the root.
+			break_depth = in.readInt();
+			final int line_cum = in.readInt();
+			final int[] line = new int[xs*ys/2], b = copyOf(board, xs*ys);
+			for(int i = 1; i<=break_depth; i++)
+			{
+				line[i] = in.readInt();
+				final int[] mvs = Board.getRawMoves(b);
+				int area = 0;
+				for(int j = 0; j<mvs.length; j+=2) if(mvs[j]==line[i]) area = mvs[j+1];
+				Board.doMove(b, line[i], area, 0);
+			}
+
+			best = new int[in.readInt()];
+			for(int i = 0; i<best.length; i++) best[i] = in.readInt();
+
+			final Node root = new Node(b);
+			root.cum = line_cum;
+			map.put(Board.hash(b), root);
+			readTree(in, root, line_cum);
+
+			return search(board, root, line, line_cum, frame_used);
+		}
+	}
+
+	// Reads what writeTree() wrote about node (null if the node couldn't be recreated, its part is then skipped),
+	// and recreates its kept children. cum is the score of reaching node.
+	private static void readTree(final DataInputStream in, final Node node, final int cum) throws IOException
+	{
+		final int t = in.readInt(); final double avg = in.readDouble(); final int topscore = in.readInt(); final double c = in.readDouble();
+		final boolean leaf = in.readBoolean();
+		if(node!=null){ node.t = t; node.avg = avg; node.topscore = topscore; node.c = c; node.hasLeafHit = leaf; }
+
+		final int k = in.readInt();
+		if(node!=null && k>0 && node.child==null) node.expand();
+		for(int j = 0; j<k; j++)
+		{
+			final int i = in.readInt();
+			Node kid = null;
+			if(node!=null && node.child[i]==null) //A transposition already recreated elsewhere is left as it is.
+			{
+				kid = getChild(node, i, node.moves[2*i], node.moves[2*i+1], cum);
+				if(kid.p!=node || kid.t!=0) kid = null;
+			}
+			readTree(in, kid, kid==null ? 0 : kid.cum);
+		}
+	}
+	/*** </Checkpoints> ***/
+
 	//Records that a terminal node is present in all ancestors of the given terminal node, and increases their C value.
 	private static void leafhit(Node leaf)
 	{
-		for(double mul = 1.05; leaf!=null; mul = Math.max(mul*0.999,1.001), leaf=leaf.p)
+		for(double mul = params.leafhit; leaf!=null; mul = Math.max(mul*0.999,1.001), leaf=leaf.p)
 		{
 			leaf.c *= mul;
 			leaf.hasLeafHit = true;
@@ -545,8 +1380,8 @@ public class MCTS
 		if(t<0) return;
 		for(; p!=null; kid=p, p=p.p)
 		{
-			sub += p.score[p.getIndex(kid)];
-			p.avg = (p.avg*p.t - sub*t)/(p.t - t);
+			sub += p.score[kid.idx];
+			p.avg = p.t==t ? 0 : (p.avg*p.t - sub*t)/(p.t - t); //The root of the search has no visits of its own.
 			p.t -= t;
 		}
 	}
@@ -558,7 +1393,7 @@ public class MCTS
 		if(t<0) return;
 		for(; p!=null; kid=p, p=p.p)
 		{
-			add += p.score[p.getIndex(kid)];
+			add += p.score[kid.idx];
 			p.avg = (p.avg*p.t + add*t)/(p.t + t);
 			p.t += t;
 		}
@@ -0,0 +1,248 @@
+/**
+Nested Rollout Policy Adaptation, an alternative to MCTS.
+A playout picks each move with probability proportional to exp(weight of its code), a search of level l runs
+iterations searches of level l-1, and after each one it moves the weights towards the best line it has seen.
+The searches of level 1 made by a search of level 2 run in parallel, each on its own copy of the policy, and the best of them counts as the result.
+Searches are restarted with an empty policy until the resources (counted as by MCTS, one per playout and one per move) are used up.
+*/
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.Consumer;
+import java.util.stream.*;
+import static java.util.Arrays.*;
+
+public class NRPA
+{
+	//Abbreviations.
+	private static final int ys = Board.height, xs = Board.width, colors = Board.colors;
+
+	//Number of iterations of a level, and the learning rate.
+	private static final int iterations = 100;
+	private static final double alpha = 1.0;
+
+	//Number of searches of level 1 run at once.
+	private static final int threads = Runtime.getRuntime().availableProcessors();
+
+	//The board, the resources, the resources used, and the best solution found, with its listener.
+	private final int[] board;
+	private final long simlim;
+	private final AtomicLong used = new AtomicLong();
+	private int[] best = {Integer.MIN_VALUE};
+	private final Consumer<int[]> listener;
+
+	private NRPA(final int[] board, final int simlim, final Consumer<int[]> listener)
+	{
+		this.board = copyOf(board, xs*ys);
+		this.simlim = simlim;
+		this.listener = listener;
+	}
+
+	// Yields a solution for the given board using simlim resources (solution format as MCTS.solve()).
+	// At least one playout is run, even if simlim isn't positive.
+	public static int[] solve(final int[] board, final int simlim)
+	{
+		return solve(board, simlim, System.nanoTime(), null);
+	}
+
+	// As solve() above, with the given seed, and every improving solution is given to listener (if not null) as it is found.
+	public static int[] solve(final int[] board, final int simlim, final long seed, final Consumer<int[]> listener)
+	{
+		final NRPA n = new NRPA(board, simlim, listener);
+		final Random rnd = new Random(seed);
+
+		//The highest level whose search fits in the resources, assuming about 64 moves per playout, but at least 2.
+		int level = 2;
+		for(double cost = 64.0*threads*iterations*iterations*iterations; cost<=simlim; cost *= iterations) ++level;
+
+		while(n.used.get()<simlim) n.search(level, new Policy(), rnd);
+		if(n.best[0]==Integer.MIN_VALUE) n.playout(new Policy(), rnd, new Board.Moves()); //No resources, a random playout still gives a solution.
+		return n.best;
+	}
+
+	// Runs a search of the given level improving the given policy, and returns the best line found (null if the resources ran out first).
+	private int[] search(final int level, final Policy pol, final Random rnd)
+	{
+		final Board.Moves m = new Board.Moves();
+		int[] top = null;
+		for(int i = 0; i<iterations && used.get()<simlim; i++)
+		{
+			final int[] sol;
+			if(level==2) //Run the searches of level 1 in parallel.
+			{
+				final long[] seeds = new long[threads];
+				for(int t = 0; t<threads; t++) seeds[t] = rnd.nextLong();
+				final Policy p = pol;
+				sol = IntStream.range(0, threads).parallel()
+					.mapToObj(t -> level1(p.copy(), new Random(seeds[t]), new Board.Moves()))
+					.filter(Objects::nonNull).max(Comparator.comparingInt(s -> s[0])).orElse(null); //Ties go to the lowest thread.
+			}
+			else sol = search(level-1, pol.copy(), rnd);
+			if(sol==null) break;
+
+			if(top==null || sol[0]>=top[0]) top = sol;
+			adapt(pol, top, m);
+		}
+		return top;
+	}
+
+	// Runs a search of level 1 improving the given policy, and returns the best line found (null if the resources ran out first).
+	private int[] level1(final Policy pol, final Random rnd, final Board.Moves m)
+	{
+		int[] top = null;
+		for(int i = 0; i<iterations && used.get()<simlim; i++)
+		{
+			final int[] sol = playout(pol, rnd, m);
+			if(top==null || sol[0]>=top[0]) top = sol;
+			adapt(pol, top, m);
+		}
+		return top;
+	}
+
+	// Plays the game to the end following the given policy, and returns the line.
+	private int[] playout(final Policy pol, final Random rnd, final Board.Moves m)
+	{
+		final int[] b = copyOf(board, xs*ys), h = new int[xs*ys/2+1];
+		final double[] w = new double[xs*ys/2];
+		for(int j = 1; ; j++)
+		{
+			final int len = m.moves(b);
+			if(len==0)
+			{
+				h[0] += Board.endscore(b);
+				used.addAndGet(j);
+				final int[] sol = copyOf(h, j);
+				record(sol);
+				return sol;
+			}
+
+			//Pick a move by the weights of their codes.
+			double sum = 0;
+			for(int i = 0; i<len; i+=2) sum += w[i>>1] = Math.exp(pol.get(code(b, m.mvs[i], m.mvs[i+1])));
+			double r = rnd.nextDouble()*sum;
+			int mv = 0;
+			while(mv+2<len && (r -= w[mv>>1])>=0) mv += 2;
+
+			h[j] = m.mvs[mv];
+			h[0] = Board.doMove(b, m.mvs[mv], m.mvs[mv+1], h[0]);
+		}
+	}
+
+	// Moves the weights of pol towards playing the given line.
+	private void adapt(final Policy pol, final int[] sol, final Board.Moves m)
+	{
+		final Policy old = pol.copy();
+		final int[] b = copyOf(board, xs*ys);
+		final double[] w = new double[xs*ys/2];
+		final int[] codes = new int[xs*ys/2];
+		for(int j = 1; j<sol.length; j++)
+		{
+			final int len = m.moves(b);
+			int area = 0;
+			double sum = 0;
+			for(int i = 0; i<len; i+=2)
+			{
+				codes[i>>1] = code(b, m.mvs[i], m.mvs[i+1]);
+				sum += w[i>>1] = Math.exp(old.get(codes[i>>1]));
+				if(m.mvs[i]==sol[j]) area = m.mvs[i+1];
+			}
+
+			pol.add(code(b, sol[j], area), alpha);
+			for(int i = 0; i<len; i+=2) pol.add(codes[i>>1], -alpha*w[i>>1]/sum);
+			Board.doMove(b, sol[j], area, 0);
+		}
+	}
+
+	// Returns the code of removing the group of the given area at position pos: the position, the color and the area.
+	// There are xs*ys*colors*xs*ys codes, most of which never occur, hence the policy is a hash map.
+	private static int code(final int[] b, final int pos, final int area)
+	{
+		return (pos*colors+b[pos]-1)*xs*ys+area;
+	}
+
+	// Stores the given solution if it's the best so far.
+	private void record(final int[] sol)
+	{
+		synchronized(this)
+		{
+			if(sol[0]<=best[0]) return;
+			best = sol;
+		}
+		if(listener!=null) listener.accept(sol);
+	}
+
+	//The weights of the move codes, as an open addressing hash map from int to double (0 for absent codes).
+	private static class Policy
+	{
+		private int[] keys = new int[1024];
+		private double[] vals = new double[1024];
+		private int size;
+
+		Policy(){ fill(keys, -1); }
+
+		// Returns the weight of the given code.
+		double get(final int code)
+		{
+			for(int i = slot(code); ; i = (i+1)&(keys.length-1))
+			{
+				if(keys[i]==code) return vals[i];
+				if(keys[i]<0) return 0;
+			}
+		}
+
+		// Adds d to the weight of the given code.
+		void add(final int code, final double d)
+		{
+			int i = slot(code);
+			while(keys[i]!=code && keys[i]>=0) i = (i+1)&(keys.length-1);
+			if(keys[i]<0)
+			{
+				if(2*(size+1)>keys.length){ grow(); add(code, d); return; }
+				keys[i] = code; ++size;
+			}
+			vals[i] += d;
+		}
+
+		// Returns an independent copy.
+		Policy copy()
+		{
+			final Policy p = new Policy();
+			p.keys = keys.clone(); p.vals = vals.clone(); p.size = size;
+			return p;
+		}
+
+		// Returns the home slot of the given code.
+		private int slot(final int code)
+		{
+			return (code*0x9E3779B9>>>7)&(keys.length-1);
+		}
+
+		// Doubles the capacity.
+		private void grow()
+		{
+			final int[] k = keys; final double[] v = vals;
+			keys = new int[2*k.length]; vals = new double[2*k.length]; size = 0;
+			fill(keys, -1);
+			for(int i = 0; i<k.length; i++) if(k[i]>=0) add(k[i], v[i]);
+		}
+	}
+
+	// Reads boards (in the format of Game) from the given file, and prints the solution found for each,
+	// whether it's valid, and the score per second.
+	// Usage: java NRPA file simlim
+	public static void main(String[] args) throws Exception
+	{
+		try(Scanner in = new Scanner(new java.io.File(args[0])))
+		{
+			while(in.hasNextInt())
+			{
+				final int[] b = new int[xs*ys];
+				for(int i = 0; i<xs*ys; i++) b[i] = in.nextInt();
+
+				final long t = System.currentTimeMillis();
+				final int[] sol = solve(b, Integer.parseInt(args[1]));
+				final long ms = Math.max(1, System.currentTimeMillis()-t);
+				System.out.println(sol[0]+" "+Board.verify(copyOf(b, xs*ys), sol)+" "+ms+"ms "+(1000L*sol[0]/ms)+"/s "+Arrays.toString(sol));
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,374 @@
+/**
+A resident solver server. Boards are posted over HTTP, queued, and searched by a fixed pool of worker processes
+(see Worker) that stay alive between requests, so JVM startup, class loading and JIT warm-up are only paid once.
+
+POST /solve?simlim=S&deadline=D with a board (xs*ys numbers in the format of Game) as body.
+	Both parameters are optional, D is in ms from the arrival of the request.
+	The response streams one line per improving solution ("score move move ..."), the last line is the final answer.
+	If the queue is full the request is rejected (503), if the deadline passes while queued it is dropped (504).
+	If the worker of a request dies, the request is queued again, once. If that worker dies too the request fails:
+	with 502 if nothing was streamed yet, otherwise the response ends with a line "error ...".
+	A request taken by a worker that had already died is queued again without counting that as a retry.
+POST /solve?beam=W solves the board with a beam of width W (see Beam) instead, W is capped by the max_beam of the server.
+	The request is queued like the others, but it is solved in the server itself, on the slot of the worker that takes it.
+GET /stats reports the queue depth, busy workers, request counts and latency percentiles.
+*/
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class Server
+{
+	//Abbreviations.
+	private static final int ys = Board.height, xs = Board.width;
+
+	//Resources of a request that doesn't specify any, and the beam width cap of a server that doesn't specify one.
+	private static final int default_simlim = 10*64*10000, default_max_beam = 1000;
+
+	//Markers put in the solution queue of a request when it's done, when it expired in the queue, or when its workers died.
+	private static final int[] DONE = new int[0], EXPIRED = new int[0], FAILED = new int[0];
+
+	//A request whose worker died is queued again at most this many times.
+	private static final int max_retries = 1;
+
+	//An idle worker is checked every idle_check ms, so that a dead one doesn't take the next request.
+	private static final long idle_check = 100;
+
+	//A worker that dies within stable ms of its start counts as a failure. The n-th failure in a row is replaced
+	// after min_backoff*2^(n-1) ms, at most max_backoff ms, and after max_failures failures in a row the worker is not replaced.
+	private static final long stable = 10000, min_backoff = 100, max_backoff = 30000;
+	private static final int max_failures = 8;
+
+	//A queued request: its board, resources, beam width (0 to use a worker), deadline (absolute ms, 0 if none), arrival time (ms),
+	// the solutions found for it, in the order they were found, the best score relayed so far, and the number of retries.
+	private static class Request
+	{
+		final int[] board; final int simlim, beam; final long deadline, arrival = System.currentTimeMillis();
+		final LinkedBlockingQueue<int[]> sols = new LinkedBlockingQueue<int[]>();
+		int top = Integer.MIN_VALUE, retries;
+		Request(final int[] board, final int simlim, final int beam, final long deadline)
+		{
+			this.board = board; this.simlim = simlim; this.beam = beam; this.deadline = deadline;
+		}
+	}
+
+	//The requests waiting for a worker, at most capacity of them.
+	private final ArrayBlockingQueue<Request> queue;
+
+	//The port the workers connect to, the resources they warm up with, and the largest beam width served.
+	private final int port, warmup, max_beam;
+
+	//Number of busy workers, completed, rejected, expired and failed requests.
+	private int busy, completed, rejected, expired, failed;
+
+	//Replaces the workers that died, after their backoff.
+	private final ScheduledExecutorService respawner = Executors.newSingleThreadScheduledExecutor(r ->
+	{
+		final Thread t = new Thread(r);
+		t.setDaemon(true);
+		return t;
+	});
+
+	//Latencies (ms) of the latest completed requests, as a ring buffer, and the number of recorded latencies.
+	private final long[] lat = new long[1024];
+	private int latn;
+
+	private Server(final int capacity, final int port, final int warmup, final int max_beam)
+	{
+		queue = new ArrayBlockingQueue<Request>(capacity);
+		this.port = port;
+		this.warmup = warmup;
+		this.max_beam = max_beam;
+	}
+
+	// Starts a server answering HTTP on the given port, with the given number of workers and queue capacity.
+	// Each worker warms up with the given number of resources before taking requests.
+	public static void start(final int http, final int workers, final int capacity, final int warmup) throws IOException
+	{
+		start(http, workers, capacity, warmup, default_max_beam);
+	}
+
+	// As start() above, and beam requests are capped at the given width.
+	public static void start(final int http, final int workers, final int capacity, final int warmup, final int max_beam) throws IOException
+	{
+		final ServerSocket links = new ServerSocket(0, workers, InetAddress.getLoopbackAddress());
+		final Server server = new Server(capacity, links.getLocalPort(), warmup, max_beam);
+
+		final Thread acceptor = new Thread(() -> server.accept(links));
+		acceptor.setDaemon(true);
+		acceptor.start();
+		for(int i = 0; i<workers; i++) server.spawn(0);
+
+		final HttpServer web = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), http), 0);
+		web.createContext("/solve", server::solve);
+		web.createContext("/stats", server::stats);
+		web.setExecutor(Executors.newCachedThreadPool()); //Handlers block until their request is done.
+		web.start();
+		System.err.println("Serving on port "+http+" with "+workers+" workers.");
+	}
+
+	/*** <Workers> ***/
+	// Starts a new worker process, which is replaced whenever it exits (see respawn()).
+	// The given number of failures in a row preceded it.
+	private void spawn(final int failures)
+	{
+		final String java = System.getProperty("java.home")+File.separator+"bin"+File.separator+"java";
+		final long start = System.currentTimeMillis();
+		try
+		{
+			final Process p = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Worker", ""+port, ""+warmup).inheritIO().start();
+			p.onExit().thenRun(() -> respawn(System.currentTimeMillis()-start>=stable ? 1 : failures+1));
+		}
+		catch(IOException e)
+		{
+			System.err.println("Could not start a worker: "+e);
+			respawn(failures+1);
+		}
+	}
+
+	// Replaces a worker after the given number of failures in a row, with exponential backoff.
+	private void respawn(final int failures)
+	{
+		if(failures>=max_failures){ System.err.println("A worker failed "+failures+" times in a row, it is not replaced."); return; }
+		final long delay = Math.min(min_backoff<<Math.min(failures-1, 30), max_backoff);
+		respawner.schedule(() -> spawn(failures), delay, TimeUnit.MILLISECONDS);
+	}
+
+	// Accepts workers until the socket is closed.
+	private void accept(final ServerSocket links)
+	{
+		try
+		{
+			while(true)
+			{
+				final Socket sock = links.accept();
+				final Thread t = new Thread(() -> serve(sock));
+				t.setDaemon(true);
+				t.start();
+			}
+		}
+		catch(IOException e){} //The socket was closed.
+	}
+
+	// Hands out requests to the worker on the other end of sock, and collects its solutions.
+	private void serve(final Socket sock)
+	{
+		Request req = null;
+		boolean sent = false;
+		try(Socket s = sock)
+		{
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+
+			for(int id = 0; ; id++)
+			{
+				req = next(s, in);
+
+				final long now = System.currentTimeMillis();
+				if(req.deadline>0 && now>=req.deadline)
+				{
+					synchronized(this){ ++expired; }
+					req.sols.add(req.top>Integer.MIN_VALUE ? DONE : EXPIRED); //A retried request may have streamed solutions already.
+					req = null;
+					continue;
+				}
+
+				synchronized(this){ ++busy; }
+				if(req.beam>0) //Solved right here, the worker waits.
+				{
+					req.sols.add(Beam.solve(req.board, req.beam));
+					finish(req);
+					req = null;
+					continue;
+				}
+
+				sent = false;
+				out.writeInt(Coordinator.JOB); out.writeInt(id); out.writeLong(now);
+				out.writeInt(req.simlim); out.writeInt(req.top); out.writeInt(req.deadline>0 ? (int)(req.deadline-now) : 0);
+				for(int i = 0; i<xs*ys; i++) out.writeInt(req.board[i]);
+				out.flush();
+				sent = true;
+
+				//Relay improving solutions until the request is done.
+				for(int tag = in.readInt(); tag!=Coordinator.DONE; tag = in.readInt())
+				{
+					in.readInt();
+					final int[] sol = new int[in.readInt()];
+					for(int i = 0; i<sol.length; i++) sol[i] = in.readInt();
+					if(sol[0]>req.top){ req.top = sol[0]; req.sols.add(sol); }
+				}
+				in.readInt(); //The id of the done job.
+
+				finish(req);
+				req = null;
+			}
+		}
+		catch(InterruptedException e){}
+		catch(IOException e) //The worker died.
+		{
+			System.err.println("Worker died.");
+			if(req!=null)
+			{
+				synchronized(this){ --busy; }
+				retry(req, sent);
+			}
+		}
+	}
+
+	// Takes the next request for the worker on the other end of s, checking every idle_check ms while waiting that it's still there.
+	// If it's gone, a request taken meanwhile is queued again, and an EOFException is thrown.
+	private Request next(final Socket s, final InputStream in) throws InterruptedException, EOFException
+	{
+		while(true)
+		{
+			final Request req = queue.poll(idle_check, TimeUnit.MILLISECONDS);
+			if(!alive(s, in))
+			{
+				if(req!=null) retry(req, false);
+				throw new EOFException("The worker is gone.");
+			}
+			if(req!=null) return req;
+		}
+	}
+
+	// Returns whether the worker on the other end of s is still connected, waiting at most a ms for the end of its stream.
+	// An idle worker sends nothing, but anything read is put back into in.
+	private static boolean alive(final Socket s, final InputStream in)
+	{
+		try
+		{
+			s.setSoTimeout(1);
+			in.mark(1);
+			if(in.read()<0) return false;
+			in.reset();
+			return true;
+		}
+		catch(SocketTimeoutException e){ return true; }
+		catch(IOException e){ return false; }
+		finally
+		{
+			try{ s.setSoTimeout(0); }
+			catch(SocketException e){} //Closed, the next read fails anyway.
+		}
+	}
+
+	// Queues the given request again after its worker died, unless it has been retried enough or the queue is full,
+	// then it fails. The retry is only counted if the request was sent to the worker (counted is true).
+	private void retry(final Request req, final boolean counted)
+	{
+		if((!counted || req.retries++<max_retries) && queue.offer(req)) return;
+		synchronized(this){ ++failed; }
+		req.sols.add(FAILED);
+	}
+
+	// Marks the given request as done, and records its latency.
+	private synchronized void finish(final Request req)
+	{
+		--busy; ++completed;
+		lat[latn++%lat.length] = System.currentTimeMillis()-req.arrival;
+		req.sols.add(DONE);
+	}
+	/*** </Workers> ***/
+
+	/*** <HTTP> ***/
+	// Queues the posted board, and streams its solutions back.
+	private void solve(final HttpExchange ex) throws IOException
+	{
+		try(HttpExchange e = ex)
+		{
+			if(!"POST".equals(e.getRequestMethod())){ reply(e, 405, "POST a board.\n"); return; }
+
+			//Parse the parameters and the board.
+			int simlim = default_simlim, beam = 0; long deadline = 0;
+			final String query = e.getRequestURI().getQuery();
+			if(query!=null)
+				for(final String kv : query.split("&"))
+				{
+					final String[] p = kv.split("=",2);
+					try
+					{
+						if(p[0].equals("simlim")) simlim = Integer.parseInt(p[1]);
+						else if(p[0].equals("deadline")) deadline = System.currentTimeMillis()+Long.parseLong(p[1]);
+						else if(p[0].equals("beam")) beam = Integer.parseInt(p[1]);
+					}
+					catch(RuntimeException x){ reply(e, 400, "Bad parameter "+kv+".\n"); return; }
+				}
+
+			final int[] board = new int[xs*ys];
+			final Scanner in = new Scanner(e.getRequestBody());
+			for(int i = 0; i<xs*ys; i++)
+			{
+				if(!in.hasNextInt()){ reply(e, 400, "Expected "+xs*ys+" numbers.\n"); return; }
+				board[i] = in.nextInt();
+				if(board[i]<1 || board[i]>Board.colors){ reply(e, 400, "Colors are 1 through "+Board.colors+".\n"); return; }
+			}
+
+			//Admission control.
+			final Request req = new Request(board, simlim, Math.min(beam, max_beam), deadline);
+			if(!queue.offer(req))
+			{
+				synchronized(this){ ++rejected; }
+				reply(e, 503, "Queue is full.\n");
+				return;
+			}
+
+			int[] sol = req.sols.take();
+			if(sol==EXPIRED){ reply(e, 504, "Deadline passed in the queue.\n"); return; }
+			if(sol==FAILED){ reply(e, 502, "The workers of the request died.\n"); return; }
+
+			e.sendResponseHeaders(200, 0); //Chunked, the solutions are streamed.
+			final OutputStream out = e.getResponseBody();
+			for(; sol!=DONE; sol = req.sols.take())
+			{
+				if(sol==FAILED){ out.write("error The workers of the request died.\n".getBytes()); break; }
+				final StringBuilder sb = new StringBuilder();
+				for(final int x : sol) sb.append(x).append(' ');
+				sb.setCharAt(sb.length()-1, '\n');
+				out.write(sb.toString().getBytes());
+				out.flush();
+			}
+		}
+		catch(InterruptedException x){}
+	}
+
+	// Reports the state of the server.
+	private void stats(final HttpExchange ex) throws IOException
+	{
+		final long[] l;
+		final StringBuilder sb = new StringBuilder();
+		synchronized(this)
+		{
+			sb.append("queued ").append(queue.size()).append('\n');
+			sb.append("busy ").append(busy).append('\n');
+			sb.append("completed ").append(completed).append('\n');
+			sb.append("rejected ").append(rejected).append('\n');
+			sb.append("expired ").append(expired).append('\n');
+			sb.append("failed ").append(failed).append('\n');
+			l = Arrays.copyOf(lat, Math.min(latn, lat.length));
+		}
+		Arrays.sort(l);
+		for(final int p : new int[]{50, 90, 99})
+			sb.append("p").append(p).append("_ms ").append(l.length==0 ? 0 : l[(l.length-1)*p/100]).append('\n');
+
+		try(HttpExchange e = ex){ reply(e, 200, sb.toString()); }
+	}
+
+	// Sends a complete plain text reply.
+	private static void reply(final HttpExchange e, final int code, final String msg) throws IOException
+	{
+		final byte[] b = msg.getBytes();
+		e.sendResponseHeaders(code, b.length);
+		e.getResponseBody().write(b);
+		e.getResponseBody().close();
+	}
+	/*** </HTTP> ***/
+
+	// Usage: java Server port workers capacity warmup [max_beam]
+	public static void main(String[] args) throws Exception
+	{
+		start(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+			args.length>4 ? Integer.parseInt(args[4]) : default_max_beam);
+	}
+}
@@ -0,0 +1,183 @@
+/**
+A seeded smoke test of every solver path: each one solves random boards of the corpus of Bench (see Bench.board()),
+of a few sizes, with small budgets, and every solution must pass Board.verify(). The Verifier must accept the same
+solutions and flag corrupted copies of them. A search stopped by its deadline must resume from its checkpoint
+(see MCTS.setCheckpoint()) to a legal solution at least as good as the one it had.
+Only illegal solutions and crashes are caught, not weak solutions, so it's cheap enough to run after every change.
+
+Usage: java Smoke [seed]
+The exit status is 1 if a check failed.
+*/
+import java.io.*;
+import java.util.*;
+
+public class Smoke
+{
+	//Resources of each solve, and of each lap of the check of carried nodes.
+	private static final int simlim = 100000, carry_simlim = 1500000;
+
+	//The board sizes (width, height, colors) of the corpus.
+	private static final int[][] sizes = {{15, 15, 5}, {10, 10, 4}, {6, 6, 3}};
+
+	//The boards, and the number of failed checks.
+	private static int[][] boards;
+	private static int failed = 0;
+
+	//A solver under test, solves the given board with the given seed.
+	private interface Solver
+	{
+		int[] solve(int[] board, long seed) throws Exception;
+	}
+
+	// Checks that the given solution of the given board is legal and scores what it claims, and that the Verifier agrees,
+	// also on corrupted copies of it.
+	private static void check(final String name, final int[] board, final int[] sol)
+	{
+		if(sol==null || !Board.verify(board.clone(), sol)){ fail(name+": "+Arrays.toString(sol)+" doesn't verify"); return; }
+
+		final Verifier v = new Verifier();
+		if(v.check(board, sol, sol.length)>=0) fail(name+": the Verifier rejects "+Arrays.toString(sol));
+
+		final int[] wrong = sol.clone();
+		++wrong[0];
+		if(v.check(board, wrong, wrong.length)!=0) fail(name+": the Verifier accepts a wrong score");
+		if(sol.length>1)
+		{
+			final int[] illegal = sol.clone();
+			illegal[1] = -1;
+			if(v.check(board, illegal, illegal.length)!=1) fail(name+": the Verifier accepts an illegal move");
+		}
+	}
+
+	// Reports a failed check.
+	private static void fail(final String msg)
+	{
+		++failed;
+		System.out.println("FAILED "+msg);
+	}
+
+	// Runs the given solver on every board, and checks its solutions.
+	private static void run(final String name, final Solver s)
+	{
+		final long t = System.currentTimeMillis();
+		for(int b = 0; b<boards.length; b++)
+		{
+			try{ check(name+" on board "+b, boards[b], s.solve(boards[b].clone(), 1+b)); }
+			catch(Exception e){ fail(name+" on board "+b+": "+e); }
+		}
+		System.out.println(name+": "+(System.currentTimeMillis()-t)+" ms");
+	}
+
+	// Puts the settings of MCTS back to their defaults.
+	private static void defaults()
+	{
+		MCTS.setBatch(false);
+		MCTS.setSchedule(new MCTS.StaticSchedule());
+		MCTS.setPolicy(new MCTS.TabuPolicy());
+		MCTS.setParams(new MCTS.Params());
+		MCTS.setMemoryLimit(Integer.MAX_VALUE, 1.0);
+		MCTS.setWarmStart(0);
+		MCTS.setCarry(0);
+		MCTS.setDeadline(0);
+		MCTS.setBaseline(Integer.MIN_VALUE);
+		MCTS.setListener(null);
+		MCTS.setCheckpoint(null, 0);
+	}
+
+	// Runs MCTS.solve() on every board after the given setup, and puts the defaults back.
+	private static void mcts(final String name, final Runnable setup)
+	{
+		defaults();
+		setup.run();
+		run("MCTS "+name, (board, seed) -> { MCTS.setSeed(seed); return MCTS.solve(board, simlim); });
+		defaults();
+	}
+
+	// Stops a search of each board at a deadline, resumes it from its snapshot, and checks both solutions.
+	private static void checkpoint() throws IOException
+	{
+		final File file = File.createTempFile("smoke", ".snapshot");
+		final long t = System.currentTimeMillis();
+		try
+		{
+			for(int b = 0; b<boards.length; b++)
+			{
+				defaults();
+				MCTS.setSeed(1+b);
+				MCTS.setCheckpoint(file.getPath(), Long.MAX_VALUE); //Only the snapshot at the end.
+				MCTS.setDeadline(System.currentTimeMillis()+100);
+				final int[] cut = MCTS.solve(boards[b].clone(), 10*simlim);
+				check("Checkpoint on board "+b, boards[b], cut);
+
+				defaults();
+				try
+				{
+					final int[] sol = MCTS.resume(file.getPath());
+					check("Resume on board "+b, boards[b], sol);
+					if(sol[0]<cut[0]) fail("Resume on board "+b+": scores "+sol[0]+" after "+cut[0]+" in the snapshot");
+				}
+				catch(IOException e){ fail("Resume on board "+b+": "+e); }
+			}
+		}
+		finally
+		{
+			defaults();
+			file.delete();
+			new File(file.getPath()+".tmp").delete();
+		}
+		System.out.println("MCTS checkpoint and resume: "+(System.currentTimeMillis()-t)+" ms");
+	}
+
+	// Checks that metaSolve() carries solved nodes between the laps of a 15x15 board, given enough resources for its laps
+	// to reach the end of the game (see MCTS.setCarry()).
+	private static void carry()
+	{
+		final long t = System.currentTimeMillis();
+		MCTS.setCarry(1000);
+		MCTS.setSeed(1);
+		check("MCTS carry", boards[0], MCTS.metaSolve(boards[0].clone(), 2*carry_simlim, 2));
+		if(MCTS.getCarried()==0) fail("MCTS carry: no solved node was carried between the laps");
+		System.out.println("MCTS carry: "+MCTS.getCarried()+" solved nodes carried, "+(System.currentTimeMillis()-t)+" ms");
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		final long seed = args.length>0 ? Long.parseLong(args[0]) : 1;
+		final Random rnd = new Random(seed);
+		boards = new int[2*sizes.length][];
+		for(int i = 0; i<boards.length; i++)
+		{
+			final int[] size = sizes[i%sizes.length];
+			boards[i] = Bench.board(rnd.nextLong(), size[0], size[1], size[2]);
+		}
+
+		mcts("default", () -> {});
+		mcts("batch", () -> MCTS.setBatch(true));
+		mcts("adaptive", () -> MCTS.setSchedule(new MCTS.AdaptiveSchedule()));
+		mcts("memory limit", () -> MCTS.setMemoryLimit(2000, 1.0));
+		mcts("warm start", () -> MCTS.setWarmStart(0.05));
+		for(final String p : new String[]{"random", "tabu", "size", "column"})
+			mcts("policy "+p, () -> MCTS.setPolicy(MCTS.policy(p)));
+
+		defaults();
+		run("MCTS metaSolve", (board, s) -> { MCTS.setSeed(s); return MCTS.metaSolve(board, simlim, 3); });
+		MCTS.setCarry(1000);
+		run("MCTS metaSolve carry", (board, s) -> { MCTS.setSeed(s); return MCTS.metaSolve(board, simlim, 3); });
+		carry();
+		defaults();
+
+		checkpoint();
+
+		run("Beam", (board, s) -> Beam.solve(board, 50));
+		run("NRPA", (board, s) -> NRPA.solve(board, simlim, s, null));
+		run("WarmStart", (board, s) -> WarmStart.solve(board, simlim, s));
+
+		final long t = System.currentTimeMillis();
+		final int[][] sols = Coordinator.solve(boards, simlim, 1, 2);
+		for(int b = 0; b<boards.length; b++) check("Coordinator on board "+b, boards[b], sols[b]);
+		System.out.println("Coordinator: "+(System.currentTimeMillis()-t)+" ms");
+
+		System.out.println(failed==0 ? "All checks passed." : failed+" checks failed.");
+		if(failed>0) System.exit(1);
+	}
+}
\ No newline at end of file
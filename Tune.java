@@ -0,0 +1,159 @@
+/**
+Tunes the constants of MCTS (see MCTS.Params) by successive halving.
+For every budget and board size, random settings around the defaults (the defaults among them) are raced:
+every round, all settings still in the race solve the same new boards of the seeded corpus (see Bench), with the same seeds,
+and the worse half is dropped. The boards per round double, so the close races get the most boards.
+Settings are ranked by their mean score minus the mean score of all settings on the same board.
+The solves run in parallel in worker processes, as MCTS is static.
+
+Usage: java Tune key=value...
+	seed=1 settings=16 boards=2 sizes=15x15 colors=5 budgets=100000,1000000 procs=2
+(boards is the number of boards of the first round.)
+The best settings of each budget and size are printed in the format of MCTS.Params.toString().
+*/
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class Tune
+{
+	//Abbreviations.
+	private static final int ys = Board.height, xs = Board.width;
+
+	// Returns random settings around the defaults.
+	private static MCTS.Params random(final Random rnd)
+	{
+		final MCTS.Params d = new MCTS.Params();
+		return new MCTS.Params(
+			d.c*Math.exp(rnd.nextGaussian()*0.5),
+			0.1+0.5*rnd.nextDouble(),
+			1-(1-d.decay)*Math.exp(rnd.nextGaussian()),
+			d.floor*Math.exp(rnd.nextGaussian()*0.5),
+			1+(d.leafhit-1)*Math.exp(rnd.nextGaussian()*0.5),
+			16+rnd.nextInt(81));
+	}
+
+	// Races the given settings on boards of the given size with the given budget, and returns the winner.
+	private static MCTS.Params race(List<MCTS.Params> alive, final int width, final int height, final int colors, final int budget,
+		int boards, final Random rnd, final int procs) throws Exception
+	{
+		final double[] sum = new double[alive.size()]; //Summed relative score of each setting.
+		final int[] done = new int[alive.size()]; //Number of boards of each setting.
+		final List<MCTS.Params> all = new ArrayList<MCTS.Params>(alive);
+
+		for(int round = 1; alive.size()>1; round++, boards *= 2)
+		{
+			//Every setting solves the same boards, with the same seed per board.
+			final long[] seeds = new long[boards];
+			for(int b = 0; b<boards; b++) seeds[b] = rnd.nextLong();
+			final int[][] score = new int[alive.size()][boards];
+
+			final ConcurrentLinkedQueue<int[]> todo = new ConcurrentLinkedQueue<int[]>(); //Setting, board.
+			for(int i = 0; i<alive.size(); i++) for(int b = 0; b<boards; b++) todo.add(new int[]{i, b});
+			final List<MCTS.Params> race = alive;
+			final ExecutorService pool = Executors.newFixedThreadPool(procs);
+			final List<Future<Void>> jobs = new ArrayList<Future<Void>>();
+			for(int p = 0; p<procs; p++)
+				jobs.add(pool.submit(() -> { drive(todo, race, seeds, score, width, height, colors, budget); return null; }));
+			pool.shutdown();
+			for(final Future<Void> f : jobs) f.get();
+
+			//Score relative to the other settings on the same board.
+			for(int b = 0; b<boards; b++)
+			{
+				double mean = 0;
+				for(int i = 0; i<alive.size(); i++) mean += score[i][b];
+				mean /= alive.size();
+				for(int i = 0; i<alive.size(); i++){ final int k = all.indexOf(alive.get(i)); sum[k] += score[i][b]-mean; ++done[k]; }
+			}
+
+			//Keep the better half.
+			final List<MCTS.Params> next = new ArrayList<MCTS.Params>(alive);
+			next.sort(Comparator.comparingDouble(p -> -sum[all.indexOf(p)]/done[all.indexOf(p)]));
+			alive = next.subList(0, (next.size()+1)/2);
+			System.err.println("Round "+round+" ("+boards+" boards), best so far: "+alive.get(0));
+		}
+		return alive.get(0);
+	}
+
+	// Starts a worker process and hands it solves (setting, board) until there are none left.
+	private static void drive(final Queue<int[]> todo, final List<MCTS.Params> race, final long[] seeds, final int[][] score,
+		final int width, final int height, final int colors, final int budget) throws IOException, InterruptedException
+	{
+		final String java = System.getProperty("java.home")+File.separator+"bin"+File.separator+"java";
+		final Process p = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Tune", "worker")
+			.redirectError(ProcessBuilder.Redirect.DISCARD).start();
+		try(PrintWriter out = new PrintWriter(new OutputStreamWriter(p.getOutputStream()));
+			BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream())))
+		{
+			for(int[] t = todo.poll(); t!=null; t = todo.poll())
+			{
+				final StringBuilder sb = new StringBuilder();
+				sb.append(budget).append(' ').append(seeds[t[1]]).append(' ').append(race.get(t[0]));
+				for(final int c : Bench.board(seeds[t[1]], width, height, colors)) sb.append(' ').append(c);
+				out.println(sb);
+				out.flush();
+
+				final String res = in.readLine();
+				if(res==null) throw new IOException("A worker died.");
+				score[t[0]][t[1]] = Integer.parseInt(res.trim());
+			}
+		}
+		p.waitFor();
+	}
+
+	// The worker process: reads solves (budget seed params board) from stdin, one per line, and answers each with the score.
+	private static void worker() throws IOException
+	{
+		final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		for(String line = in.readLine(); line!=null; line = in.readLine())
+		{
+			final String[] f = line.trim().split("\\s+");
+			final int budget = Integer.parseInt(f[0]);
+			final long seed = Long.parseLong(f[1]);
+			MCTS.setParams(MCTS.Params.parse(String.join(" ", Arrays.copyOfRange(f, 2, 8))));
+			final int[] board = new int[xs*ys];
+			for(int i = 0; i<xs*ys; i++) board[i] = Integer.parseInt(f[8+i]);
+
+			MCTS.setSeed(seed);
+			System.out.println(MCTS.solve(board, budget)[0]);
+			System.out.flush();
+		}
+	}
+
+	// Parses a comma separated list.
+	private static String[] list(final String s)
+	{
+		return s.split(",");
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length>0 && args[0].equals("worker")){ worker(); return; }
+
+		final Map<String,String> opt = new HashMap<String,String>();
+		opt.put("seed", "1"); opt.put("settings", "16"); opt.put("boards", "2"); opt.put("sizes", "15x15"); opt.put("colors", "5");
+		opt.put("budgets", "100000,1000000"); opt.put("procs", "2");
+		for(final String a : args)
+		{
+			final String[] kv = a.split("=", 2);
+			if(kv.length<2 || !opt.containsKey(kv[0])) throw new IllegalArgumentException("Unknown option "+a+".");
+			opt.put(kv[0], kv[1]);
+		}
+
+		final Random rnd = new Random(Long.parseLong(opt.get("seed")));
+		final int colors = Integer.parseInt(opt.get("colors")), procs = Integer.parseInt(opt.get("procs"));
+		for(final String size : list(opt.get("sizes")))
+			for(final String budget : list(opt.get("budgets")))
+			{
+				final List<MCTS.Params> settings = new ArrayList<MCTS.Params>();
+				settings.add(new MCTS.Params());
+				for(int i = 1, n = Integer.parseInt(opt.get("settings")); i<n; i++) settings.add(random(rnd));
+
+				final String[] wh = size.split("x");
+				final MCTS.Params best = race(settings, Integer.parseInt(wh[0]), Integer.parseInt(wh[1]), colors, Integer.parseInt(budget),
+					Integer.parseInt(opt.get("boards")), rnd, procs);
+				System.out.println(size+" "+budget+": "+best);
+			}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,212 @@
+/**
+Re-verifies archived solutions in bulk.
+An archive is a text file with one board and solution per line: the xs*ys colors of the board (1 to colors, in the cell order of Board),
+followed by the score and the moves of the solution (as returned by MCTS.solve()).
+Numbers are separated by spaces, tabs, commas or brackets, so the output of Arrays.toString() can be used as is.
+A reader thread cuts the files into blocks of whole lines, and worker threads verify the blocks, each with its own buffers,
+so nothing is allocated per solution. The given board is never modified, and groups are found with an explicit stack.
+Every mismatch is reported with its file, line, and the first move that fails (or the score that was expected).
+*/
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class Verifier
+{
+	//Abbreviations.
+	private static final int ys = Board.height, xs = Board.width, colors = Board.colors, n = xs*ys;
+
+	//Size of a block of lines (a longer line gets a block of its own), and how many blocks may wait for a worker.
+	private static final int block = 1<<20, backlog = 16;
+
+	//A block of whole lines of a file, starting at line number first.
+	private static class Block
+	{
+		final String file; final byte[] data; final int len; final long first;
+		Block(final String file, final byte[] data, final int len, final long first){ this.file = file; this.data = data; this.len = len; this.first = first; }
+	}
+
+	//Marks the end of the blocks.
+	private static final Block END = new Block(null, new byte[0], 0, 0);
+
+	//The buffers of a worker: the parsed board and solution, the board being played, the group search stack, and the single block counts.
+	private final int[] start = new int[n], sol = new int[n/2+2], board = new int[n], stack = new int[n], cnt = new int[colors+1];
+
+	//The columns of the latest removed group, as a bitmask.
+	private long mask;
+
+	// Checks the solution sol[0..len) of the given board. The board is left as it was.
+	// Returns -1 if the solution is valid, the index of the first move that isn't a legal move,
+	// or 0 if all moves are legal but the score is wrong.
+	public int check(final int[] start, final int[] sol, final int len)
+	{
+		System.arraycopy(start, 0, board, 0, n);
+		int score = 0;
+		for(int i = 1; i<len; i++)
+		{
+			final int pos = sol[i];
+			if(pos<0 || pos>=n || board[pos]==0) return i;
+			final int area = kill(pos);
+			if(area<2) return i;
+			score += (area-2)*(area-2);
+			Board.redBoard(board, mask); //Only the columns of the group need to be reduced.
+		}
+		return score+endscore()==sol[0] ? -1 : 0;
+	}
+
+	// Removes the group containing pos, and returns its size. (A group of size 1 is left as it was.)
+	private int kill(final int pos)
+	{
+		final int color = board[pos];
+		int top = 0, area = 0;
+		stack[top++] = pos; board[pos] = 0;
+		mask = 0;
+		while(top>0)
+		{
+			final int p = stack[--top], x = p/ys, y = p%ys;
+			++area; mask |= 1L<<x;
+			if(x>0 && board[p-ys]==color){ board[p-ys] = 0; stack[top++] = p-ys; }
+			if(x<xs-1 && board[p+ys]==color){ board[p+ys] = 0; stack[top++] = p+ys; }
+			if(y>0 && board[p-1]==color){ board[p-1] = 0; stack[top++] = p-1; }
+			if(y<ys-1 && board[p+1]==color){ board[p+1] = 0; stack[top++] = p+1; }
+		}
+		if(area==1) board[pos] = color;
+		return area;
+	}
+
+	// Returns the score of the end of the game on the current board, as Board.endscore(). (The board is emptied.)
+	private int endscore()
+	{
+		if(board[ys-1]==0) return 1000;
+		Arrays.fill(cnt, 0);
+		int score = 0;
+		for(int pos = 0; pos<n; pos++)
+			if(board[pos]!=0)
+			{
+				final int color = board[pos], area = kill(pos);
+				if(area==1){ ++cnt[color]; board[pos] = 0; }
+				else score += (area-2)*(area-2);
+			}
+		for(int c = 1; c<=colors; c++) score -= (cnt[c]-2)*(cnt[c]-2);
+		return score;
+	}
+
+	// Verifies every line of the given block, and reports mismatches to out. Returns the number of mismatches.
+	private int verify(final Block b, final PrintStream out)
+	{
+		int bad = 0;
+		long line = b.first;
+		for(int i = 0; i<b.len; line++)
+		{
+			int len = 0, k = 0;
+			boolean ok = true;
+			for(; i<b.len && b.data[i]!='\n'; )
+			{
+				final byte c = b.data[i];
+				if(c==' ' || c=='\t' || c=='\r' || c==',' || c=='[' || c==']'){ ++i; continue; }
+				if(c!='-' && (c<'0' || c>'9')){ ok = false; ++i; continue; }
+
+				//Parse a number.
+				final boolean neg = c=='-';
+				if(neg) ++i;
+				int x = 0;
+				for(; i<b.len && b.data[i]>='0' && b.data[i]<='9'; i++) x = 10*x+b.data[i]-'0';
+				if(neg) x = -x;
+
+				if(k<n) start[k++] = x;
+				else if(len<sol.length) sol[len++] = x;
+				else ok = false;
+			}
+			++i; //Skip the newline.
+
+			if(k==0 && len==0 && ok) continue; //Empty line.
+
+			for(int j = 0; ok && j<n; j++) ok = start[j]>=1 && start[j]<=colors;
+			if(!ok || k<n || len==0)
+			{
+				++bad;
+				out.println(b.file+":"+line+": malformed");
+				continue;
+			}
+
+			final int r = check(start, sol, len);
+			if(r<0) continue;
+			++bad;
+			if(r==0) out.println(b.file+":"+line+": score "+sol[0]+" is wrong");
+			else out.println(b.file+":"+line+": move "+r+" ("+sol[r]+") is illegal");
+		}
+		return bad;
+	}
+
+	// Verifies every line of the given files using the given number of threads, and reports mismatches to out.
+	// Returns the number of verified lines and the number of mismatches.
+	public static long[] verify(final List<String> files, final int threads, final PrintStream out) throws IOException, InterruptedException
+	{
+		final ArrayBlockingQueue<Block> queue = new ArrayBlockingQueue<Block>(backlog);
+		final AtomicLong bad = new AtomicLong();
+
+		final Thread[] workers = new Thread[threads];
+		for(int t = 0; t<threads; t++)
+		{
+			workers[t] = new Thread(() ->
+			{
+				final Verifier v = new Verifier();
+				try{ for(Block b = queue.take(); b!=END; b = queue.take()) bad.addAndGet(v.verify(b, out)); }
+				catch(InterruptedException e){}
+			});
+			workers[t].start();
+		}
+
+		long lines = 0;
+		try{ for(final String f : files) lines = read(f, lines, queue); }
+		finally{ for(int t = 0; t<threads; t++) queue.put(END); }
+		for(final Thread w : workers) w.join();
+		return new long[]{lines, bad.get()};
+	}
+
+	// Cuts the given file into blocks of whole lines and queues them. Returns total, plus the number of lines of the file.
+	private static long read(final String file, final long total, final BlockingQueue<Block> queue) throws IOException, InterruptedException
+	{
+		long line = 1;
+		try(InputStream in = Channels.newInputStream(FileChannel.open(Paths.get(file), StandardOpenOption.READ)))
+		{
+			byte[] buf = new byte[block];
+			int len = 0;
+			for(boolean eof = false; !eof || len>0; )
+			{
+				if(len==buf.length) buf = Arrays.copyOf(buf, 2*buf.length); //A single line longer than the buffer.
+				final int r = in.read(buf, len, buf.length-len);
+				if(r<0) eof = true;
+				else len += r;
+
+				//Cut after the last newline (or at the end of the file).
+				int cut = len;
+				if(!eof){ while(cut>0 && buf[cut-1]!='\n') --cut; }
+				if(cut==0) continue;
+
+				final byte[] rest = new byte[Math.max(block, len-cut)];
+				System.arraycopy(buf, cut, rest, 0, len-cut);
+				queue.put(new Block(file, buf, cut, line));
+				for(int i = 0; i<cut; i++) if(buf[i]=='\n') ++line;
+				if(eof && buf[cut-1]!='\n') ++line;
+				buf = rest; len -= cut;
+			}
+		}
+		return total+line-1;
+	}
+
+	// Usage: java Verifier threads file...
+	public static void main(String[] args) throws Exception
+	{
+		final long t = System.currentTimeMillis();
+		final long[] r = verify(Arrays.asList(args).subList(1, args.length), Integer.parseInt(args[0]), System.out);
+
+		long bytes = 0;
+		for(int i = 1; i<args.length; i++) bytes += Files.size(Paths.get(args[i]));
+		final long ms = Math.max(1, System.currentTimeMillis()-t);
+		System.err.println(r[0]+" lines, "+r[1]+" mismatches, "+ms+" ms, "+(bytes/1000/ms)+" MB/s.");
+	}
+}
\ No newline at end of file
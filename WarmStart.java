@@ -0,0 +1,79 @@
+/**
+Finds a decent solution quickly, to give MCTS a meaningful bar before the tree search starts.
+Several starts run in parallel: a largest-group greedy, a TabuColor greedy, a narrow beam,
+and randomized TabuColor greedies until the budget is used up.
+The budget is counted in inspected states, as the resources of MCTS.
+*/
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+import static java.util.Arrays.*;
+
+public class WarmStart
+{
+	//Abbreviations.
+	private static final int ys = Board.height, xs = Board.width, colors = Board.colors;
+
+	//Width of the beam, and the probability that a randomized greedy makes a random move.
+	private static final int beam_width = 8;
+	private static final double eps = 0.1;
+
+	// Returns the best solution found for the given board using about budget resources
+	// (solution format as MCTS.solve(): index 0 is the score, followed by the moves).
+	public static int[] solve(final int[] board, final int budget, final long seed)
+	{
+		final AtomicLong used = new AtomicLong();
+		final AtomicInteger next = new AtomicInteger();
+		final int threads = Runtime.getRuntime().availableProcessors();
+
+		return IntStream.range(0, threads).parallel().mapToObj(t ->
+		{
+			final Board.Moves m = new Board.Moves();
+			int[] best = null;
+			for(int k = next.getAndIncrement(); used.get()<budget; k = next.getAndIncrement())
+			{
+				final Random rnd = new Random(seed+k);
+				final int[] sol =
+				k==0 ? greedy(board, m, false, null, used) :
+				k==1 ? greedy(board, m, true, null, used) :
+				k==2 ? Beam.solve(board, beam_width, used) :
+				greedy(board, m, true, rnd, used);
+				if(best==null || sol[0]>best[0]) best = sol;
+			}
+			return best;
+		}).filter(Objects::nonNull).max(Comparator.comparingInt(s -> s[0])).orElseGet(() -> greedy(board, new Board.Moves(), false, null, used));
+	}
+
+	// Plays the largest group until the game ends, avoiding the most frequent color while there are more than
+	// Params.tabu_blocks blocks (as set in MCTS) if tabu is set. If rnd is given, a random move is made with probability eps.
+	private static int[] greedy(final int[] start, final Board.Moves m, final boolean tabu, final Random rnd, final AtomicLong used)
+	{
+		final int[] board = copyOf(start, xs*ys), h = new int[xs*ys/2+1];
+
+		//Pick the tabu color, and count the blocks.
+		final int[] cnt = new int[colors+1];
+		for(int i = 0; i<xs*ys; i++) ++cnt[board[i]];
+		int t = 1, blocks = 0;
+		for(int c = 1; c<=colors; c++){ if(cnt[c]>cnt[t]) t = c; blocks += cnt[c]; }
+		final int tabu_blocks = MCTS.getParams().tabu_blocks;
+
+		for(int j = 1; ; j++)
+		{
+			used.incrementAndGet();
+			final int len = tabu && blocks>tabu_blocks ? m.tabuMoves(board,t) : m.moves(board);
+			if(len==0)
+			{
+				h[0] += Board.endscore(board);
+				return copyOf(h, j);
+			}
+
+			int mv = 0;
+			if(rnd!=null && rnd.nextDouble()<eps) mv = 2*rnd.nextInt(len>>1);
+			else for(int i = 2; i<len; i+=2) if(m.mvs[i+1]>m.mvs[mv+1]) mv = i;
+
+			h[j] = m.mvs[mv];
+			h[0] = Board.doMove(board, m.mvs[mv], m.mvs[mv+1], h[0]);
+			blocks -= m.mvs[mv+1];
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/**
+A worker process of Coordinator (or Server), it runs MCTS on the jobs it is handed
+and streams every improving solution back to the coordinator.
+*/
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+
+public class Worker
+{
+	//Abbreviations.
+	private static final int ys = Board.height, xs = Board.width;
+
+	//The job being searched (-1 if none).
+	private static volatile int current = -1;
+
+	// Usage: java Worker port [warmup]
+	// If warmup is given, a random board is solved with that many resources before connecting, to warm up the JIT.
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length>1)
+		{
+			final java.util.Random rnd = new java.util.Random();
+			final int[] board = new int[xs*ys];
+			for(int i = 0; i<xs*ys; i++) board[i] = 1+rnd.nextInt(Board.colors);
+			MCTS.solve(board, Integer.parseInt(args[1]));
+		}
+
+		final Socket sock = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]));
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(sock.getInputStream()));
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(sock.getOutputStream()));
+
+		//Jobs are read by a separate thread, so that new baselines arrive during the search.
+		final BlockingQueue<int[]> jobs = new LinkedBlockingQueue<int[]>();
+		final Thread reader = new Thread(() ->
+		{
+			try
+			{
+				while(true)
+				{
+					final int tag = in.readInt();
+					if(tag==Coordinator.STOP) break;
+					if(tag==Coordinator.BEST)
+					{
+						final int id = in.readInt(), score = in.readInt();
+						if(id==current) MCTS.setBaseline(score);
+						continue;
+					}
+
+					//A job: id, seed (two ints), simlim, baseline, deadline, board.
+					final int[] job = new int[6+xs*ys];
+					for(int i = 0; i<job.length; i++) job[i] = in.readInt();
+					jobs.put(job);
+				}
+			}
+			catch(Exception e){}
+			jobs.add(new int[0]); //No more jobs.
+		});
+		reader.setDaemon(true);
+		reader.start();
+
+		MCTS.setListener(sol ->
+		{
+			synchronized(out)
+			{
+				try
+				{
+					out.writeInt(Coordinator.SOL); out.writeInt(current); out.writeInt(sol.length);
+					for(final int x : sol) out.writeInt(x);
+					out.flush();
+				}
+				catch(IOException e){ System.exit(1); } //The coordinator is gone.
+			}
+		});
+
+		for(int[] job = jobs.take(); job.length>0; job = jobs.take())
+		{
+			final int[] board = new int[xs*ys];
+			System.arraycopy(job, 6, board, 0, xs*ys);
+
+			current = job[0];
+			MCTS.setSeed(((long)job[1]<<32) | (job[2] & 0xffffffffL));
+			MCTS.setBaseline(job[4]);
+			MCTS.setDeadline(job[5]>0 ? System.currentTimeMillis()+job[5] : 0);
+			MCTS.solve(board, job[3]);
+
+			synchronized(out){ out.writeInt(Coordinator.DONE); out.writeInt(current); out.flush(); }
+			current = -1;
+		}
+
+		sock.close();
+	}
+}